@@ -0,0 +1,38 @@
+package com.example.dustcalc.bench;
+
+import com.example.dustcalc.input.Instance;
+import com.example.dustcalc.model.CircuitGraphBuilder;
+import com.example.dustcalc.model.DustBlock;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Graph construction over staircase fields with glass and stone obstacles.
+ * Obstacle lookups are constant time, so the average time per build should
+ * grow linearly with the total block count across the {@code dusts} sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CircuitGraphBuilderBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int dusts;
+
+    private Instance instance;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        instance = SyntheticCircuits.staircaseField(dusts);
+    }
+
+    @Benchmark
+    public List<DustBlock> build() {
+        return new CircuitGraphBuilder().build(instance);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.dustcalc.bench;
+
+import com.example.dustcalc.input.Instance;
+import com.example.dustcalc.model.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from a built graph to the end of the first trace, ordering every dust
+ * up front versus computing update lists as propagation reaches them.
+ * A trace only reaches dusts within 15 steps of the source, so the lazy
+ * variants should stay flat as {@code dusts} grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class FirstTraceBenchmark {
+
+    @Param({"line", "mesh", "lattice"})
+    public String shape;
+
+    @Param({"10000", "100000", "1000000"})
+    public int dusts;
+
+    private Instance instance;
+    // Reordered by every eager call
+    private SpatialIndex index;
+    private List<DustBlock> graph;
+    // Never ordered, so lazy calls compile no update edges
+    private SpatialIndex unorderedIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        instance = SyntheticCircuits.of(shape, dusts);
+        index = new SpatialIndex(instance.dustBlocks().size());
+        graph = new CircuitGraphBuilder().build(instance, index);
+        unorderedIndex = new SpatialIndex(instance.dustBlocks().size());
+        new CircuitGraphBuilder().build(instance, unorderedIndex);
+    }
+
+    /** Orders all dusts, compiles and traces. */
+    @Benchmark
+    public long eager() {
+        new UpdateOrderCalculator().applyOrdering(graph, index);
+        CompiledCircuit circuit = CompiledCircuit.compile(index, instance.powerSources());
+        CountingTraceSink sink = new CountingTraceSink();
+        new CompiledTracer(circuit).toggle(0, circuit.sourcePower(0), sink);
+        return sink.getCount();
+    }
+
+    @Benchmark
+    public long lazy() {
+        return traceLazily(0);
+    }
+
+    @Benchmark
+    public long lazyBounded() {
+        return traceLazily(256);
+    }
+
+    private long traceLazily(int maxCached) {
+        CompiledCircuit circuit = CompiledCircuit.compile(unorderedIndex, instance.powerSources());
+        CountingTraceSink sink = new CountingTraceSink();
+        new CompiledTracer(circuit, new LazyUpdateOrder(unorderedIndex, false, maxCached), null)
+                .toggle(0, circuit.sourcePower(0), sink);
+        return sink.getCount();
+    }
+}
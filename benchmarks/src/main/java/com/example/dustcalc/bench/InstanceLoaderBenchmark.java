@@ -0,0 +1,76 @@
+package com.example.dustcalc.bench;
+
+import com.example.dustcalc.input.BinaryInstanceLoader;
+import com.example.dustcalc.input.BinaryInstanceWriter;
+import com.example.dustcalc.input.Instance;
+import com.example.dustcalc.input.JsonInstanceLoader;
+import com.example.dustcalc.input.StreamingJsonInstanceLoader;
+import com.example.dustcalc.model.CircuitGraphBuilder;
+import com.example.dustcalc.model.DustBlock;
+import com.example.dustcalc.model.SpatialIndex;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load-and-build time of the tree-model JSON loader against the streaming one
+ * and the binary circuit format.
+ * Run with {@code -prof gc} for allocation per load; peak heap is measured by
+ * LoaderFootprint, which needs a fresh JVM per loader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class InstanceLoaderBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int dusts;
+
+    private Path file;
+    private Path binaryFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Instance instance = SyntheticCircuits.staircaseField(dusts);
+        file = writeJson(instance);
+        binaryFile = Files.createTempFile("dustcalc-bench", ".dcb");
+        new BinaryInstanceWriter().write(instance, binaryFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(binaryFile);
+    }
+
+    @Benchmark
+    public List<DustBlock> treeModel() throws IOException {
+        Instance instance = new JsonInstanceLoader(file.toString()).load();
+        return new CircuitGraphBuilder().build(instance, new SpatialIndex(instance.dustBlocks().size()));
+    }
+
+    @Benchmark
+    public List<DustBlock> streaming() throws IOException {
+        return new CircuitGraphBuilder().build(new StreamingJsonInstanceLoader(file.toString()), new SpatialIndex());
+    }
+
+    @Benchmark
+    public List<DustBlock> binary() throws IOException {
+        return new CircuitGraphBuilder().build(new BinaryInstanceLoader(binaryFile.toString()), new SpatialIndex());
+    }
+
+    /** Writes {@code instance} to a temporary JSON file in the loader's input layout. */
+    static Path writeJson(Instance instance) throws IOException {
+        Path file = Files.createTempFile("dustcalc-bench", ".json");
+        new ObjectMapper().writeValue(file.toFile(), instance);
+        return file;
+    }
+}
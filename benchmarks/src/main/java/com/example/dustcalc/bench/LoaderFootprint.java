@@ -0,0 +1,73 @@
+package com.example.dustcalc.bench;
+
+import com.example.dustcalc.input.Instance;
+import com.example.dustcalc.input.JsonInstanceLoader;
+import com.example.dustcalc.input.StreamingJsonInstanceLoader;
+import com.example.dustcalc.model.CircuitGraphBuilder;
+import com.example.dustcalc.model.OffHeapNodeStore;
+import com.example.dustcalc.model.SpatialIndex;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measures peak heap and wall time of loading and building one circuit.
+ * Run once per loader so peaks are not shared:
+ * <pre>
+ *   java -cp benchmarks/target/benchmarks.jar com.example.dustcalc.bench.LoaderFootprint tree 5000000
+ *   java -cp benchmarks/target/benchmarks.jar com.example.dustcalc.bench.LoaderFootprint streaming 5000000
+ *   java -cp benchmarks/target/benchmarks.jar com.example.dustcalc.bench.LoaderFootprint offheap 5000000
+ *   java -cp benchmarks/target/benchmarks.jar com.example.dustcalc.bench.LoaderFootprint mapped 5000000
+ * </pre>
+ * The offheap and mapped modes stream into an OffHeapNodeStore, in direct
+ * memory or in memory-mapped temporary files; unlike the other modes they also
+ * order the update targets, and print the bytes held outside the heap.
+ */
+public final class LoaderFootprint {
+    private LoaderFootprint() {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: LoaderFootprint <tree|streaming|offheap|mapped> <dusts>");
+            System.exit(1);
+        }
+        Path file = InstanceLoaderBenchmark.writeJson(SyntheticCircuits.staircaseField(Integer.parseInt(args[1])));
+        try {
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+            long start = System.nanoTime();
+            int nodes;
+            long offHeap = 0;
+            if (args[0].equals("offheap") || args[0].equals("mapped")) {
+                Path dir = args[0].equals("mapped") ? file.getParent() : null;
+                try (OffHeapNodeStore store = new CircuitGraphBuilder()
+                        .buildOffHeap(new StreamingJsonInstanceLoader(file.toString()), dir)) {
+                    nodes = store.size();
+                    offHeap = store.offHeapBytes();
+                }
+            } else if (args[0].equals("streaming")) {
+                nodes = new CircuitGraphBuilder()
+                        .build(new StreamingJsonInstanceLoader(file.toString()), new SpatialIndex()).size();
+            } else {
+                Instance instance = new JsonInstanceLoader(file.toString()).load();
+                nodes = new CircuitGraphBuilder().build(instance).size();
+            }
+            long elapsed = System.nanoTime() - start;
+            long peak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+            }
+            System.out.printf("%s: %d nodes, %.1f ms, peak heap %.1f MiB, off-heap %.1f MiB%n",
+                    args[0], nodes, elapsed / 1e6, peak / (1024.0 * 1024.0), offHeap / (1024.0 * 1024.0));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.dustcalc.bench;
+
+import com.example.dustcalc.input.Instance;
+import com.example.dustcalc.model.CircuitGraphBuilder;
+import com.example.dustcalc.model.DustBlock;
+import com.example.dustcalc.model.SpatialIndex;
+import com.example.dustcalc.model.UpdateOrderCalculator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of the parallel graph-build and update-ordering modes across
+ * ForkJoinPool sizes. {@code threads = 0} runs the sequential path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ParallelScalingBenchmark {
+
+    @Param({"1000000"})
+    public int dusts;
+
+    @Param({"0", "1", "2", "4", "8", "16", "32"})
+    public int threads;
+
+    private ForkJoinPool pool;
+    private Instance instance;
+    private List<DustBlock> graph;
+    private SpatialIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = threads == 0 ? null : new ForkJoinPool(threads);
+        instance = SyntheticCircuits.staircaseField(dusts);
+        index = new SpatialIndex(dusts);
+        graph = new CircuitGraphBuilder().build(instance, index);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public List<DustBlock> build() {
+        return new CircuitGraphBuilder(pool).build(instance);
+    }
+
+    @Benchmark
+    public List<DustBlock> applyOrdering() {
+        new UpdateOrderCalculator(pool).applyOrdering(graph, index);
+        return graph;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.dustcalc.bench;
+
+import com.example.dustcalc.input.Instance;
+import com.example.dustcalc.input.JsonInstanceLoader;
+import com.example.dustcalc.model.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of each pipeline phase on its own (JSON load, graph build,
+ * update ordering, tracing) across the synthetic circuit shapes.
+ * Run {@link #main} (or pass {@code -prof gc}) to report the allocation rate
+ * of every phase next to its throughput.
+ * <p>
+ * A trace only reaches dusts within 15 steps of the source, so traceAll cost
+ * depends on the shape rather than on {@code dusts}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class PipelinePhaseBenchmark {
+
+    @Param({"line", "staircase", "mesh", "lattice"})
+    public String shape;
+
+    @Param({"10000", "100000", "1000000"})
+    public int dusts;
+
+    private Instance instance;
+    private Path file;
+    private List<DustBlock> graph;
+    private SpatialIndex index;
+    private UpdateTracer tracer;
+    private int[] initialPowers;
+    private int[] touched = new int[64];
+    private int touchedCount;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        instance = SyntheticCircuits.of(shape, dusts);
+        file = InstanceLoaderBenchmark.writeJson(instance);
+        index = new SpatialIndex(instance.dustBlocks().size());
+        graph = new CircuitGraphBuilder().build(instance, index);
+        new UpdateOrderCalculator().applyOrdering(graph, index);
+        tracer = new UpdateTracer(graph, index);
+        initialPowers = tracer.getInitialPowers();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Instance load() throws IOException {
+        return new JsonInstanceLoader(file.toString()).load();
+    }
+
+    @Benchmark
+    public List<DustBlock> build() {
+        return new CircuitGraphBuilder().build(instance, new SpatialIndex(instance.dustBlocks().size()));
+    }
+
+    @Benchmark
+    public List<DustBlock> applyOrdering() {
+        new UpdateOrderCalculator().applyOrdering(graph, index);
+        return graph;
+    }
+
+    /**
+     * One full traceAll, followed by restoring the dusts it changed so that
+     * every invocation starts from the same state.
+     */
+    @Benchmark
+    public int traceAll() {
+        touchedCount = 0;
+        tracer.traceAll(instance.powerSource(), (from, to, power) -> {
+            if (touchedCount == touched.length) {
+                touched = Arrays.copyOf(touched, touchedCount * 2);
+            }
+            touched[touchedCount++] = to;
+        });
+        for (int i = 0; i < touchedCount; i++) {
+            index.get(touched[i]).setPower(initialPowers[touched[i]]);
+        }
+        return touchedCount;
+    }
+
+    /** Runs this benchmark with the GC profiler, reporting allocation per phase. */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PipelinePhaseBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
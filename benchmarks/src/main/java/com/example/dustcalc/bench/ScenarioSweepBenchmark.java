@@ -0,0 +1,71 @@
+package com.example.dustcalc.bench;
+
+import com.example.dustcalc.input.Instance;
+import com.example.dustcalc.model.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of ParallelScenarioRunner on a sweep of source power levels, all
+ * run against one compiled circuit, across ForkJoinPool sizes and as many
+ * workers on virtual threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScenarioSweepBenchmark {
+
+    @Param({"1024"})
+    public int dusts;
+
+    @Param({"10000"})
+    public int scenarios;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int threads;
+
+    private ForkJoinPool pool;
+    private ExecutorService virtualThreads;
+    private CompiledCircuit circuit;
+    private List<Scenario> sweep;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new ForkJoinPool(threads);
+        virtualThreads = Executors.newVirtualThreadPerTaskExecutor();
+        Instance instance = SyntheticCircuits.mesh(dusts);
+        SpatialIndex index = new SpatialIndex(dusts);
+        List<DustBlock> graph = new CircuitGraphBuilder().build(instance, index);
+        new UpdateOrderCalculator().applyOrdering(graph, index);
+        circuit = CompiledCircuit.compile(index, instance.powerSources());
+        sweep = new ArrayList<>(scenarios);
+        for (int i = 0; i < scenarios; i++) {
+            sweep.add(Scenario.of(new ToggleEvent(0, 1 + i % 15)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+        virtualThreads.shutdown();
+    }
+
+    @Benchmark
+    public long forkJoin() throws InterruptedException {
+        return new ParallelScenarioRunner(circuit, pool).totalUpdates(sweep);
+    }
+
+    @Benchmark
+    public long virtualThreads() throws InterruptedException {
+        return new ParallelScenarioRunner(circuit, virtualThreads, threads, 32).totalUpdates(sweep);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.dustcalc.bench;
+
+import com.example.dustcalc.input.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates synthetic circuit Instances for benchmarks.
+ */
+public final class SyntheticCircuits {
+    private SyntheticCircuits() {}
+
+    /**
+     * Parallel staircase rows along +X, two blocks apart in Z. Every step alternates
+     * between a glass block under the upper dust and a stone cap over the lower dust,
+     * so obstacles grow in proportion to the dust count.
+     *
+     * @param dusts approximate number of dust blocks
+     */
+    public static Instance staircaseField(int dusts) {
+        int rowLength = Math.max(2, (int) Math.sqrt(dusts));
+        int rows = Math.max(1, dusts / rowLength);
+        List<DustBlockSpec> dust = new ArrayList<>(rows * rowLength);
+        List<TransparentBlockSpec> glass = new ArrayList<>();
+        List<BlockingBlockSpec> stone = new ArrayList<>();
+        for (int r = 0; r < rows; r++) {
+            int z = 2 * r;
+            for (int x = 0; x < rowLength; x++) {
+                int y = x & 1;
+                dust.add(new DustBlockSpec(x, y, z, 0));
+                if (y == 1) {
+                    glass.add(new TransparentBlockSpec(x, 0, z, "glass"));
+                } else if (x % 4 == 2) {
+                    stone.add(new BlockingBlockSpec(x, 1, z, "stone"));
+                }
+            }
+        }
+        return new Instance(eastwardSource(-1, 0, 0, 15), dust, glass, stone);
+    }
+
+    /**
+     * A flat square mesh of dust at y=0 with no obstacles, fed from the west corner.
+     *
+     * @param dusts approximate number of dust blocks
+     */
+    public static Instance mesh(int dusts) {
+        int side = Math.max(1, (int) Math.sqrt(dusts));
+        List<DustBlockSpec> dust = new ArrayList<>(side * side);
+        for (int x = 0; x < side; x++) {
+            for (int z = 0; z < side; z++) {
+                dust.add(new DustBlockSpec(x, 0, z, 0));
+            }
+        }
+        return new Instance(eastwardSource(-1, 0, 0, 15), dust, List.of(), List.of());
+    }
+
+    /**
+     * One straight line of dust along +X at y=0, fed from its west end: the
+     * longest possible single cascade per dust.
+     *
+     * @param dusts number of dust blocks
+     */
+    public static Instance line(int dusts) {
+        List<DustBlockSpec> dust = new ArrayList<>(dusts);
+        for (int x = 0; x < dusts; x++) {
+            dust.add(new DustBlockSpec(x, 0, 0, 0));
+        }
+        return new Instance(eastwardSource(-1, 0, 0, 15), dust, List.of(), List.of());
+    }
+
+    /**
+     * A 3D lattice filling a cube: dust on every cell with {@code x + y} even,
+     * so each dust continues along ±Z on its own level and climbs or descends
+     * staircases along ±X. A stone cap sits above every dust with {@code x % 4 == 0},
+     * cutting some of those staircases. Every dust probes a full 12-neighbourhood
+     * and has up to 42 update slots filled.
+     *
+     * @param dusts approximate number of dust blocks
+     */
+    public static Instance lattice(int dusts) {
+        int side = Math.max(2, (int) Math.cbrt(2.0 * dusts));
+        List<DustBlockSpec> dust = new ArrayList<>(side * side * side / 2 + 1);
+        List<BlockingBlockSpec> stone = new ArrayList<>();
+        for (int x = 0; x < side; x++) {
+            for (int y = 0; y < side; y++) {
+                if (((x + y) & 1) != 0) continue;
+                for (int z = 0; z < side; z++) {
+                    dust.add(new DustBlockSpec(x, y, z, 0));
+                    if ((x & 3) == 0) {
+                        stone.add(new BlockingBlockSpec(x, y + 1, z, "stone"));
+                    }
+                }
+            }
+        }
+        return new Instance(eastwardSource(-1, 0, 0, 15), dust, List.of(), stone);
+    }
+
+    /**
+     * @param shape one of "line", "staircase", "mesh", "lattice"
+     */
+    public static Instance of(String shape, int dusts) {
+        return switch (shape) {
+            case "line" -> line(dusts);
+            case "staircase" -> staircaseField(dusts);
+            case "mesh" -> mesh(dusts);
+            case "lattice" -> lattice(dusts);
+            default -> throw new IllegalArgumentException("Unknown circuit shape: " + shape);
+        };
+    }
+
+    /** A source at (x,y,z) powering only its EAST neighbour. */
+    static PowerSourceSpec eastwardSource(int x, int y, int z, int power) {
+        return new PowerSourceSpec(x, y, z, power,
+                new boolean[]{false, true, false, false, false, false});
+    }
+}
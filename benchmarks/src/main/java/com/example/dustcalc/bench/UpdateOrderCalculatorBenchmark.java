@@ -0,0 +1,42 @@
+package com.example.dustcalc.bench;
+
+import com.example.dustcalc.model.CircuitGraphBuilder;
+import com.example.dustcalc.model.DustBlock;
+import com.example.dustcalc.model.SpatialIndex;
+import com.example.dustcalc.model.UpdateOrderCalculator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Update ordering over a dense mesh. The graph is built once per trial;
+ * applyOrdering clears and refills every block's updateTargets on each call.
+ * Run with {@code -prof gc} to see the per-block allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class UpdateOrderCalculatorBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int dusts;
+
+    private List<DustBlock> graph;
+    private SpatialIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = new SpatialIndex(dusts);
+        graph = new CircuitGraphBuilder().build(SyntheticCircuits.mesh(dusts), index);
+    }
+
+    @Benchmark
+    public List<DustBlock> applyOrdering() {
+        new UpdateOrderCalculator().applyOrdering(graph, index);
+        return graph;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.dustcalc.bench;
+
+import com.example.dustcalc.input.Instance;
+import com.example.dustcalc.metrics.PropagationMetrics;
+import com.example.dustcalc.model.*;
+
+import java.util.List;
+
+/**
+ * Reports what the compact update-ordering mode saves on each synthetic shape:
+ * stored update edges (4 bytes each in a CompiledCircuit, one reference each in
+ * a DustBlock's list) and prompts during a source switched on and off again.
+ * Also checks that both modes emit the same trace.
+ * <pre>
+ *   java -cp benchmarks/target/benchmarks.jar com.example.dustcalc.bench.UpdateTargetCompaction 1000000
+ * </pre>
+ */
+public final class UpdateTargetCompaction {
+    private UpdateTargetCompaction() {}
+
+    public static void main(String[] args) {
+        int dusts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("%-10s %12s %12s %8s %12s %12s %8s%n",
+                "shape", "edges", "compact", "saved", "prompts", "compact", "saved");
+        for (String shape : List.of("line", "staircase", "mesh", "lattice")) {
+            Instance instance = SyntheticCircuits.of(shape, dusts);
+            Run full = run(instance, false);
+            Run compact = run(instance, true);
+            if (full.traceHash != compact.traceHash || full.updates != compact.updates) {
+                throw new IllegalStateException("Compact ordering changed the trace of " + shape);
+            }
+            System.out.printf("%-10s %12d %12d %7.1f%% %12d %12d %7.1f%%%n", shape,
+                    full.edges, compact.edges, saved(full.edges, compact.edges),
+                    full.prompts, compact.prompts, saved(full.prompts, compact.prompts));
+        }
+    }
+
+    private record Run(long edges, long prompts, long updates, long traceHash) {}
+
+    private static Run run(Instance instance, boolean compact) {
+        SpatialIndex index = new SpatialIndex(instance.dustBlocks().size());
+        List<DustBlock> graph = new CircuitGraphBuilder().build(instance, index);
+        new UpdateOrderCalculator(null, compact).applyOrdering(graph, index);
+        long edges = 0;
+        for (DustBlock b : graph) {
+            edges += b.getUpdateTargets().size();
+        }
+        CompiledCircuit circuit = CompiledCircuit.compile(index, instance.powerSources());
+        PropagationMetrics metrics = new PropagationMetrics();
+        CompiledTracer tracer = new CompiledTracer(circuit, metrics);
+        long[] hash = {17};
+        TraceSink sink = (from, to, power) -> hash[0] = 31 * (31 * (31 * hash[0] + from) + to) + power;
+        tracer.toggle(0, 15, sink);
+        tracer.toggle(0, 0, sink);
+        return new Run(edges, metrics.getVisits(), metrics.getUpdates(), hash[0]);
+    }
+
+    private static double saved(long before, long after) {
+        return before == 0 ? 0 : 100.0 * (before - after) / before;
+    }
+}
@@ -1,10 +1,21 @@
 package com.example.dustcalc;
 
+import com.example.dustcalc.cache.SnapshotCache;
 import com.example.dustcalc.input.*;
+import com.example.dustcalc.metrics.PhaseTimer;
+import com.example.dustcalc.metrics.PropagationMetrics;
 import com.example.dustcalc.model.*;
+import com.example.dustcalc.server.SimulationServer;
+import com.example.dustcalc.trace.BinaryTraceWriter;
+import com.example.dustcalc.trace.TraceLogPrinter;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Entry point for dustCalc: loads an Instance from JSON,
@@ -13,90 +24,267 @@ import java.util.stream.Collectors;
 public class Main {
     public static void main(String[] args) {
         if (args.length < 1) {
-            System.err.println("Usage: java -jar dustcalc.jar <input.json>");
-            System.exit(1);
+            usage();
+        }
+        if (args[0].equals("--serve")) {
+            try {
+                SimulationServer.main(Arrays.copyOfRange(args, 1, args.length));
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+                System.exit(2);
+            }
+            return;
         }
         String inputPath = args[0];
+        String binaryTracePath = null;
+        TraceLogPrinter.Mode logMode = TraceLogPrinter.Mode.FULL;
+        int snapshotEvery = 1000;
+        NodeOrder nodeOrder = NodeOrder.INPUT;
+        boolean solveOnly = false;
+        boolean printMetrics = false;
+        boolean compactUpdates = false;
+        String cacheDir = null;
+        boolean lazyOrder = false;
+        int lazyCache = 0;
+        long maxUpdates = 0;
+        long maxVisits = 0;
+        long maxTimeMs = 0;
+        int maxNodeUpdates = 0;
+        UpdateBudget budget = UpdateBudget.UNLIMITED;
+        // Malformed values (bad numbers, unknown modes) fall through to the usage text
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--binary-trace") && i + 1 < args.length) {
+                    binaryTracePath = args[++i];
+                } else if (args[i].equals("--log-mode") && i + 1 < args.length) {
+                    logMode = TraceLogPrinter.Mode.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                } else if (args[i].equals("--snapshot-every") && i + 1 < args.length) {
+                    snapshotEvery = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--order") && i + 1 < args.length) {
+                    nodeOrder = NodeOrder.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                } else if (args[i].equals("--solve")) {
+                    solveOnly = true;
+                } else if (args[i].equals("--metrics")) {
+                    printMetrics = true;
+                } else if (args[i].equals("--compact-updates")) {
+                    compactUpdates = true;
+                } else if (args[i].equals("--cache-dir") && i + 1 < args.length) {
+                    cacheDir = args[++i];
+                } else if (args[i].equals("--lazy-order")) {
+                    lazyOrder = true;
+                } else if (args[i].equals("--lazy-cache") && i + 1 < args.length) {
+                    lazyOrder = true;
+                    lazyCache = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--max-updates") && i + 1 < args.length) {
+                    maxUpdates = Long.parseLong(args[++i]);
+                } else if (args[i].equals("--max-visits") && i + 1 < args.length) {
+                    maxVisits = Long.parseLong(args[++i]);
+                } else if (args[i].equals("--max-time-ms") && i + 1 < args.length) {
+                    maxTimeMs = Long.parseLong(args[++i]);
+                } else if (args[i].equals("--max-node-updates") && i + 1 < args.length) {
+                    maxNodeUpdates = Integer.parseInt(args[++i]);
+                } else {
+                    usage();
+                }
+            }
+            if (snapshotEvery <= 0) {
+                throw new IllegalArgumentException("--snapshot-every must be positive");
+            }
+            if (lazyCache < 0) {
+                throw new IllegalArgumentException("--lazy-cache must not be negative");
+            }
+            // Rejects negative limits
+            budget = new UpdateBudget(maxUpdates, maxVisits, Duration.ofMillis(maxTimeMs), maxNodeUpdates);
+        } catch (IllegalArgumentException e) {
+            usage();
+        }
+        if (lazyOrder && cacheDir != null) {
+            // Snapshots hold fully ordered circuits, and no index to order lazily from
+            usage();
+        }
+        // All output goes through one buffered writer, in the console's charset
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, System.out.charset()), 1 << 16));
+        // Phases are always timed (a few clock reads) so JFR recordings see them;
+        // propagation counters are only collected with --metrics
+        PhaseTimer timer = new PhaseTimer();
+        PropagationMetrics metrics = printMetrics ? new PropagationMetrics() : null;
         try {
-            // Load the circuit instance
-            InstanceLoader loader = new JsonInstanceLoader(inputPath);
-            Instance instance = loader.load();
-
-            System.out.println("=== Loaded Instance ===");
-            System.out.println("Power source: " + instance.powerSource());
-            System.out.println("Dust blocks: " + instance.dustBlocks());
-            System.out.println("Transparent blocks: " + instance.transparentBlocks());
-            System.out.println("Blocking blocks: " + instance.blockingBlocks());
-
-            // Build raw connectivity
-            CircuitGraphBuilder builder = new CircuitGraphBuilder();
-            List<DustBlock> graph = builder.build(instance);
-
-            System.out.println("=== Connectivity Graph ===");
-            graph.forEach(b -> {
-                String coords = b.getX() + "," + b.getY() + "," + b.getZ();
-                String targets = b.getPowerTargets().stream()
-                        .map(t -> t.getX() + "," + t.getY() + "," + t.getZ())
-                        .collect(Collectors.joining(" | "));
-                System.out.printf("%-12s -> %s%n", coords, targets);
-            });
-
-            // Apply update ordering
-            UpdateOrderCalculator orderCalc = new UpdateOrderCalculator();
-            orderCalc.applyOrdering(graph);
-
-            System.out.println("=== Update Order Graph ===");
-            graph.forEach(b -> {
-                String coords = b.getX() + "," + b.getY() + "," + b.getZ();
-                String updates = b.getUpdateTargets().stream()
-                        .map(t -> t.getX() + "," + t.getY() + "," + t.getZ())
-                        .collect(Collectors.joining(" | "));
-                System.out.printf("%-12s -> %s%n", coords, updates);
-            });
-
-            // Assign sequential IDs to each DustBlock
-            Map<String,Integer> idMap = new LinkedHashMap<>();
-            for (int i = 0; i < graph.size(); i++) {
-                DustBlock b = graph.get(i);
-                String key = b.getX() + ":" + b.getY() + ":" + b.getZ();
-                idMap.put(key, i + 1);
+            // A cached snapshot skips loading, building, ordering and compiling
+            SnapshotCache cache = cacheDir == null ? null : new SnapshotCache(Path.of(cacheDir));
+            byte[] cacheKey = null;
+            CompiledCircuit circuit = null;
+            LazyUpdateOrder order = null;
+            Path input = Path.of(inputPath);
+            String options = "order=" + nodeOrder + " compact=" + compactUpdates;
+            if (cache != null) {
+                byte[] key = timer.time("snapshot", () -> SnapshotCache.key(input, options));
+                circuit = timer.time("snapshot", () -> cache.load(key));
+                cacheKey = key;
+            }
+
+            if (circuit != null) {
+                out.println("=== Loaded Instance ===");
+                out.println("Snapshot: " + cache.pathFor(cacheKey));
+            } else {
+                Build build = buildCircuit(inputPath, nodeOrder, compactUpdates, !lazyOrder, timer, out);
+                circuit = build.circuit();
+                if (lazyOrder) {
+                    order = new LazyUpdateOrder(build.index(), compactUpdates, lazyCache);
+                }
+                if (cache != null) {
+                    byte[] key = cacheKey;
+                    CompiledCircuit built = circuit;
+                    try {
+                        timer.time("store", () -> cache.store(key, built, input, options));
+                    } catch (IOException e) {
+                        System.err.println("Warning: could not write snapshot: " + e.getMessage());
+                    }
+                }
             }
 
+            out.println("=== Connectivity Graph ===");
+            for (int id = 0; id < circuit.nodeCount(); id++) {
+                StringJoiner targets = new StringJoiner(" | ");
+                for (int i = 0; i < circuit.powerTargetCount(id); i++) {
+                    targets.add(coords(circuit, circuit.powerTarget(id, i)));
+                }
+                out.printf("%-12s -> %s%n", coords(circuit, id), targets);
+            }
+
+            out.println("=== Update Order Graph ===");
+            if (order != null) {
+                out.println("(computed on first visit)");
+            }
+            for (int id = 0; order == null && id < circuit.nodeCount(); id++) {
+                StringJoiner updates = new StringJoiner(" | ");
+                for (int i = 0; i < circuit.updateTargetCount(id); i++) {
+                    updates.add(coords(circuit, circuit.updateTarget(id, i)));
+                }
+                out.printf("%-12s -> %s%n", coords(circuit, id), updates);
+            }
+
+            CompiledTracer tracer = new CompiledTracer(circuit, order, metrics);
+            boolean budgetExceeded = false;
+            tracer.setBudget(budget);
+
             // Print Trace IDs mapping
-            System.out.println("=== Trace IDs ===");
-            idMap.forEach((key, id) -> {
-                String[] parts = key.split(":");
-                System.out.printf("[ID=%d] @ (%s, %s, %s)%n", id, parts[0], parts[1], parts[2]);
-            });
-
-            // Run the PhaseTracer to record every update-call
-            UpdateTracer tracer = new UpdateTracer(graph);
-            List<UpdateTracer.TraceEntry> traceLog = tracer.traceAll(instance.powerSource());
-
-            // Print Trace Log
-            int[] powerArr = tracer.getInitialPowers();
-            System.out.println("=== Trace Log ===");
-            for (int i = 0; i < traceLog.size(); i++) {
-                UpdateTracer.TraceEntry e = traceLog.get(i);
-                String from = e.from();
-                String to = e.to();
-                String fromLabel = from.equals("SOURCE")
-                        ? "[SOURCE]"
-                        : String.format("[%d] (%s)", idMap.get(from), from.replace(':', ','));
-                String toLabel = String.format("[%d] (%s)", idMap.get(to), to.replace(':', ','));
-                // Update the powerArr for the 'to' block
-                int toId = idMap.get(to);
-                powerArr[toId - 1] = e.power();
-
-                // Print the entry with current global powers
-                System.out.printf("%d:\t%-20s\t→\t%-16s\t@ power=%02d    %s%n", i,
-                        fromLabel, toLabel, e.power(), Arrays.toString(powerArr));
+            out.println("=== Trace IDs ===");
+            for (int id = 0; id < circuit.nodeCount(); id++) {
+                out.printf("[ID=%d] @ (%d, %d, %d)%n", id + 1, circuit.x(id), circuit.y(id), circuit.z(id));
+            }
+
+            if (solveOnly) {
+                // Final powers only, without tracing individual updates
+                SteadyStateSolver solver = new SteadyStateSolver(circuit);
+                byte[] powers = timer.time("solve", () -> solver.solve());
+                out.println("=== Steady State ===");
+                for (int id = 0; id < circuit.nodeCount(); id++) {
+                    out.printf("[ID=%d] power=%d%n", id + 1, powers[id]);
+                }
+            } else {
+                out.println("=== Trace Log ===");
+                // The trace phase includes writing its output, which it streams
+                CompiledCircuit traced = circuit;
+                Path binaryTrace = binaryTracePath == null ? null : Path.of(binaryTracePath);
+                // Print every update-call as it happens, unless it goes to a binary file
+                TraceSink printer = binaryTrace != null ? null : new TraceLogPrinter(out, circuit, logMode, snapshotEvery);
+                try {
+                    timer.time("trace", () -> {
+                        if (binaryTrace != null) {
+                            // Stream the trace to a binary file instead of printing it
+                            try (BinaryTraceWriter writer = new BinaryTraceWriter(binaryTrace, traced)) {
+                                traceSources(tracer, traced, writer);
+                                out.printf("%d entries written to %s%n", writer.getEntryCount(), binaryTrace);
+                            }
+                        } else {
+                            traceSources(tracer, traced, printer);
+                        }
+                    });
+                } catch (UpdateBudgetExceededException e) {
+                    // The trace written so far is the partial result
+                    out.println("=== Budget Exceeded ===");
+                    out.print(e.getReport().summary(id -> "[" + (id + 1) + "] (" + coords(traced, id) + ")"));
+                    budgetExceeded = true;
+                }
+            }
+
+            if (metrics != null) {
+                metrics.commitEvent();
+                out.println("=== Metrics ===");
+                out.print(timer.summary());
+                out.print(metrics.summary());
+                if (order != null) {
+                    out.printf("Lazy update lists: %d computed%n", order.getComputedCount());
+                }
+            }
+            out.flush();
+            if (budgetExceeded) {
+                System.exit(3);
             }
 
         } catch (Exception e) {
+            out.flush();
             System.err.println("Error: " + e.getMessage());
             e.printStackTrace();
             System.exit(2);
         }
     }
+
+    /** A compiled circuit and the index its node ids come from. */
+    private record Build(SpatialIndex index, CompiledCircuit circuit) {}
+
+    /**
+     * Loads the input, prints it, and builds, orders and compiles its graph.
+     * Without {@code applyOrder} the circuit has no update edges, for lazy ordering.
+     * Trace ids are node ids + 1; source indices follow the input.
+     */
+    private static Build buildCircuit(String inputPath, NodeOrder nodeOrder, boolean compactUpdates,
+                                      boolean applyOrder, PhaseTimer timer, PrintWriter out) throws IOException {
+        // Load the circuit instance
+        Instance instance = timer.time("load", () -> InstanceLoader.forPath(inputPath).load());
+
+        out.println("=== Loaded Instance ===");
+        for (PowerSourceSpec source : instance.powerSources()) {
+            out.println("Power source: " + source);
+        }
+        out.println("Dust blocks: " + instance.dustBlocks());
+        out.println("Transparent blocks: " + instance.transparentBlocks());
+        out.println("Blocking blocks: " + instance.blockingBlocks());
+
+        // Build raw connectivity
+        CircuitGraphBuilder builder = new CircuitGraphBuilder(nodeOrder, null);
+        SpatialIndex index = new SpatialIndex(instance.dustBlocks().size());
+        List<DustBlock> graph = timer.time("build", () -> builder.build(instance, index));
+
+        // Apply update ordering
+        if (applyOrder) {
+            timer.time("order", () -> new UpdateOrderCalculator(null, compactUpdates).applyOrdering(graph, index));
+        }
+
+        // Freeze the graph
+        return timer.time("compile", () -> new Build(index, CompiledCircuit.compile(index, instance.powerSources())));
+    }
+
+    private static String coords(CompiledCircuit circuit, int id) {
+        return circuit.x(id) + "," + circuit.y(id) + "," + circuit.z(id);
+    }
+
+    /** Switches on every source in input order, each one propagating fully before the next. */
+    private static void traceSources(CompiledTracer tracer, CompiledCircuit circuit, TraceSink sink) {
+        for (int s = 0; s < circuit.sourceCount(); s++) {
+            tracer.toggle(s, circuit.sourcePower(s), sink);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java -jar dustcalc.jar <input.json|input.dcb> [--binary-trace <file>]"
+                + " [--log-mode full|delta|periodic] [--snapshot-every <n>] [--order input|morton] [--solve]"
+                + " [--metrics] [--compact-updates] [--cache-dir <dir>]"
+                + " [--lazy-order] [--lazy-cache <n>] [--max-updates <n>] [--max-visits <n>]"
+                + " [--max-time-ms <n>] [--max-node-updates <n>]");
+        System.err.println("       java -jar dustcalc.jar --serve [--port <n>|--socket <path>] [--root <dir>]"
+                + " [--cache-size <n>] [--cache-dir <dir>] [--max-visits <n>] [--max-time-ms <n>]");
+        System.exit(1);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+package com.example.dustcalc.cache;
+
+import com.example.dustcalc.model.CircuitGraphBuilder;
+import com.example.dustcalc.model.CircuitSnapshot;
+import com.example.dustcalc.model.CompiledCircuit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * A directory of CircuitSnapshot files, one per distinct input. Each snapshot
+ * is keyed by a SHA-256 over the input file's bytes, the builder version and
+ * any options that shape the graph, and named after that key. Editing the
+ * input, changing the options or upgrading the builder yields a new key, so a
+ * stale snapshot is never found; snapshots also carry their key and versions
+ * and are rejected on a mismatch.
+ * <p>
+ * For each input path and options the cache also keeps a small
+ * {@code <slot>.latest} file naming the key last stored for it, where the slot
+ * hashes the absolute path and the options. Storing a new key for a slot
+ * deletes the snapshot it supersedes, so editing an input does not leave one
+ * dead snapshot behind per edit.
+ */
+public class SnapshotCache {
+    private static final int READ_BUFFER_BYTES = 1 << 16;
+
+    private final Path directory;
+
+    public SnapshotCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Hashes the input file together with the builder version and {@code options}.
+     * @param options a description of every setting that changes the compiled graph
+     */
+    public static byte[] key(Path input, String options) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(("dustcalc builder " + CircuitGraphBuilder.VERSION + "\n" + options + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        try (InputStream in = Files.newInputStream(input)) {
+            byte[] buffer = new byte[READ_BUFFER_BYTES];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @return the cached circuit for {@code key}, or null if there is no valid snapshot
+     */
+    public CompiledCircuit load(byte[] key) {
+        Path file = pathFor(key);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return CircuitSnapshot.read(file, key);
+        } catch (IOException e) {
+            // A truncated or foreign file is treated as a miss and replaced on store
+            return null;
+        }
+    }
+
+    /**
+     * Stores {@code circuit} under {@code key}, computed by {@link #key} from
+     * {@code input} and {@code options}, and deletes the snapshot previously
+     * stored for them. Files are written to a temporary file and moved into
+     * place, so readers never see a partial file.
+     */
+    public void store(byte[] key, CompiledCircuit circuit, Path input, String options) throws IOException {
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, "snapshot", ".tmp");
+        try {
+            CircuitSnapshot.write(circuit, key, tmp);
+            Files.move(tmp, pathFor(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            Path latest = directory.resolve(slot(input, options) + ".latest");
+            String hex = HexFormat.of().formatHex(key);
+            String previous = Files.isRegularFile(latest) ? Files.readString(latest, StandardCharsets.UTF_8).trim() : null;
+            Files.writeString(tmp, hex, StandardCharsets.UTF_8);
+            Files.move(tmp, latest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (previous != null && !previous.equals(hex) && previous.matches("[0-9a-f]{64}")) {
+                // Another input with identical contents may share it; it is rebuilt on its next miss
+                Files.deleteIfExists(pathFor(HexFormat.of().parseHex(previous)));
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** @return the hex SHA-256 of the absolute input path and the options */
+    private static String slot(Path input, String options) {
+        byte[] hash = sha256().digest((input.toAbsolutePath().normalize() + "\n" + options)
+                .getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(hash);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /** @return the snapshot file for {@code key} */
+    public Path pathFor(byte[] key) {
+        return directory.resolve(HexFormat.of().formatHex(key) + ".dcs");
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.dustcalc.input;
+
+/**
+ * Layout of a binary circuit file (fixed-width values big-endian, varints LEB128):
+ * <pre>
+ *   int     magic "DCCB"
+ *   int     version
+ *   varint  sourceCount
+ *   sourceCount × (int x, int y, int z, byte finalPower, byte powerMask)   mask bit i = direction i
+ *   varint  dustCount
+ *   ceil(dustCount / 2) bytes                                powers, two 4-bit levels per byte, low nibble first
+ *   dustCount × (zigzag dx, zigzag dy, zigzag dz)           coordinates, delta to the previous dust
+ *   varint  dictionarySize, then per entry varint length + UTF-8 bytes   blockID dictionary
+ *   varint  transparentCount
+ *   transparentCount × (zigzag dx, zigzag dy, zigzag dz, varint blockID index)
+ *   varint  blockingCount
+ *   blockingCount × (zigzag dx, zigzag dy, zigzag dz, varint blockID index)
+ * </pre>
+ * Each coordinate list is delta-encoded on its own, starting from (0,0,0).
+ * Version 1 files have no sourceCount and exactly one source.
+ */
+final class BinaryCircuitFormat {
+    static final int MAGIC = 0x44434342;
+    static final int VERSION = 2;
+    static final int VERSION_SINGLE_SOURCE = 1;
+
+    private BinaryCircuitFormat() {}
+}
@@ -0,0 +1,130 @@
+package com.example.dustcalc.input;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Loads a circuit from the binary format written by BinaryInstanceWriter.
+ * The file is memory-mapped and decoded in one pass straight into the handler.
+ */
+public class BinaryInstanceLoader implements StreamingInstanceLoader {
+    private final String inputPath;
+
+    public BinaryInstanceLoader(String inputPath) {
+        this.inputPath = inputPath;
+    }
+
+    @Override
+    public void stream(InstanceHandler handler) throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(Path.of(inputPath), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Binary circuit file too large: " + inputPath);
+            }
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buf.getInt() != BinaryCircuitFormat.MAGIC) {
+                throw new IOException("Not a binary circuit file: " + inputPath);
+            }
+            int version = buf.getInt();
+            if (version != BinaryCircuitFormat.VERSION && version != BinaryCircuitFormat.VERSION_SINGLE_SOURCE) {
+                throw new IOException("Unsupported circuit version " + version + ": " + inputPath);
+            }
+
+            // Each source is 3 ints, its power and its mask
+            int sourceCount = version == BinaryCircuitFormat.VERSION_SINGLE_SOURCE
+                    ? 1 : readCount(buf, 14, "power source");
+            for (int s = 0; s < sourceCount; s++) {
+                int sx = buf.getInt(), sy = buf.getInt(), sz = buf.getInt();
+                int finalPower = buf.get();
+                int maskBits = buf.get();
+                boolean[] mask = new boolean[6];
+                for (int dir = 0; dir < mask.length; dir++) {
+                    mask[dir] = (maskBits & (1 << dir)) != 0;
+                }
+                if (finalPower < 0 || finalPower > 15) {
+                    throw new IOException("Corrupt circuit file: power source at " + sx + "," + sy + "," + sz
+                            + " has finalPower " + finalPower + ": " + inputPath);
+                }
+                handler.powerSource(new PowerSourceSpec(sx, sy, sz, finalPower, mask));
+            }
+
+            // Each dust is at least three one-byte varints
+            int dustCount = readCount(buf, 3, "dust");
+            int powersAt = buf.position();
+            buf.position(powersAt + (dustCount + 1) / 2);
+            int x = 0, y = 0, z = 0;
+            for (int i = 0; i < dustCount; i++) {
+                x += readZigZag(buf);
+                y += readZigZag(buf);
+                z += readZigZag(buf);
+                // Dust powers are packed as nibbles, so every one is a level
+                int packed = buf.get(powersAt + (i >> 1));
+                handler.dustBlock(x, y, z, (i & 1) == 0 ? packed & 0xF : (packed >> 4) & 0xF);
+            }
+
+            String[] dictionary = new String[readCount(buf, 1, "block ID")];
+            for (int i = 0; i < dictionary.length; i++) {
+                byte[] bytes = new byte[readCount(buf, 1, "block ID byte")];
+                buf.get(bytes);
+                dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            // Obstacles are three coordinate varints and a dictionary index
+            int transparentCount = readCount(buf, 4, "transparent block");
+            x = y = z = 0;
+            for (int i = 0; i < transparentCount; i++) {
+                x += readZigZag(buf);
+                y += readZigZag(buf);
+                z += readZigZag(buf);
+                handler.transparentBlock(x, y, z, dictionary[readVarInt(buf)]);
+            }
+            int blockingCount = readCount(buf, 4, "blocking block");
+            x = y = z = 0;
+            for (int i = 0; i < blockingCount; i++) {
+                x += readZigZag(buf);
+                y += readZigZag(buf);
+                z += readZigZag(buf);
+                handler.blockingBlock(x, y, z, dictionary[readVarInt(buf)]);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated or corrupt binary circuit file: " + inputPath, e);
+        }
+    }
+
+    /**
+     * Reads a count of items that take at least {@code minBytes} each.
+     * @throws IOException if it is negative or the rest of the file cannot hold that many
+     */
+    private int readCount(MappedByteBuffer buf, int minBytes, String what) throws IOException {
+        int count = readVarInt(buf);
+        if (count < 0 || (long) count * minBytes > buf.remaining()) {
+            throw new IOException("Corrupt circuit file: " + what + " count " + count
+                    + " does not fit in the remaining " + buf.remaining() + " bytes: " + inputPath);
+        }
+        return count;
+    }
+
+    private static int readZigZag(MappedByteBuffer buf) {
+        int v = readVarInt(buf);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static int readVarInt(MappedByteBuffer buf) {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buf.get();
+            v |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return v;
+            }
+        }
+        throw new IndexOutOfBoundsException("varint too long");
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.dustcalc.input;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes an Instance in the binary circuit format read by BinaryInstanceLoader.
+ */
+public class BinaryInstanceWriter {
+
+    /**
+     * Writes {@code instance} to {@code path}, replacing any existing file.
+     * @throws IllegalArgumentException if a dust or source power is outside 0–15,
+     *         or a block has no blockID; nothing is written then
+     */
+    public void write(Instance instance, Path path) throws IOException {
+        validate(instance);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(BinaryCircuitFormat.MAGIC);
+            out.writeInt(BinaryCircuitFormat.VERSION);
+
+            writeVarInt(out, instance.powerSources().size());
+            for (PowerSourceSpec src : instance.powerSources()) {
+                out.writeInt(src.x());
+                out.writeInt(src.y());
+                out.writeInt(src.z());
+                out.writeByte(src.finalPower());
+                int mask = 0;
+                for (int dir = 0; dir < src.powerMask().length; dir++) {
+                    if (src.powerMask()[dir]) mask |= 1 << dir;
+                }
+                out.writeByte(mask);
+            }
+
+            List<DustBlockSpec> dust = instance.dustBlocks();
+            writeVarInt(out, dust.size());
+            for (int i = 0; i < dust.size(); i += 2) {
+                int lo = dust.get(i).power();
+                int hi = i + 1 < dust.size() ? dust.get(i + 1).power() : 0;
+                out.writeByte(lo | (hi << 4));
+            }
+            int px = 0, py = 0, pz = 0;
+            for (DustBlockSpec d : dust) {
+                writeDelta(out, d.x() - px, d.y() - py, d.z() - pz);
+                px = d.x();
+                py = d.y();
+                pz = d.z();
+            }
+
+            // blockID dictionary, in order of first use
+            Map<String, Integer> dictionary = new HashMap<>();
+            List<String> ids = new ArrayList<>();
+            for (TransparentBlockSpec t : instance.transparentBlocks()) {
+                dictionary.computeIfAbsent(t.blockID(), k -> { ids.add(k); return ids.size() - 1; });
+            }
+            for (BlockingBlockSpec b : instance.blockingBlocks()) {
+                dictionary.computeIfAbsent(b.blockID(), k -> { ids.add(k); return ids.size() - 1; });
+            }
+            writeVarInt(out, ids.size());
+            for (String id : ids) {
+                byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(out, bytes.length);
+                out.write(bytes);
+            }
+
+            writeVarInt(out, instance.transparentBlocks().size());
+            px = py = pz = 0;
+            for (TransparentBlockSpec t : instance.transparentBlocks()) {
+                writeDelta(out, t.x() - px, t.y() - py, t.z() - pz);
+                writeVarInt(out, dictionary.get(t.blockID()));
+                px = t.x();
+                py = t.y();
+                pz = t.z();
+            }
+            writeVarInt(out, instance.blockingBlocks().size());
+            px = py = pz = 0;
+            for (BlockingBlockSpec b : instance.blockingBlocks()) {
+                writeDelta(out, b.x() - px, b.y() - py, b.z() - pz);
+                writeVarInt(out, dictionary.get(b.blockID()));
+                px = b.x();
+                py = b.y();
+                pz = b.z();
+            }
+        }
+    }
+
+    /**
+     * Checks everything the format cannot hold: powers must be levels 0-15
+     * (dust powers are packed in 4 bits), and a blockID has no null encoding.
+     */
+    private static void validate(Instance instance) {
+        for (PowerSourceSpec src : instance.powerSources()) {
+            if (src.finalPower() < 0 || src.finalPower() > 15) {
+                throw new IllegalArgumentException("Source power must be 0-15: " + src);
+            }
+        }
+        for (DustBlockSpec d : instance.dustBlocks()) {
+            if (d.power() < 0 || d.power() > 15) {
+                throw new IllegalArgumentException("Dust power must be 0-15: " + d);
+            }
+        }
+        for (TransparentBlockSpec t : instance.transparentBlocks()) {
+            if (t.blockID() == null) {
+                throw new IllegalArgumentException("Block without blockID: " + t);
+            }
+        }
+        for (BlockingBlockSpec b : instance.blockingBlocks()) {
+            if (b.blockID() == null) {
+                throw new IllegalArgumentException("Block without blockID: " + b);
+            }
+        }
+    }
+
+    private static void writeDelta(OutputStream out, int dx, int dy, int dz) throws IOException {
+        writeVarInt(out, (dx << 1) ^ (dx >> 31));
+        writeVarInt(out, (dy << 1) ^ (dy >> 31));
+        writeVarInt(out, (dz << 1) ^ (dz >> 31));
+    }
+
+    private static void writeVarInt(OutputStream out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+}
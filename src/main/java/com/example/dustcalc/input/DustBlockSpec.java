@@ -4,4 +4,15 @@ package com.example.dustcalc.input;
  * A redstone wire block at a coordinate and its initial redstone power (0–15).
  * Users must explicitly specify the power level in the input.
  */
-public record DustBlockSpec(int x, int y, int z, int power) {}
\ No newline at end of file
+public record DustBlockSpec(int x, int y, int z, int power) {
+    /**
+     * Validates that power is a power level, so a bad dust fails while the
+     * input is loaded instead of inside a tracer's per-level counters.
+     */
+    public DustBlockSpec {
+        if (power < 0 || power > 15) {
+            throw new IllegalArgumentException("Dust at " + x + "," + y + "," + z
+                    + ": power must be 0-15, got " + power);
+        }
+    }
+}
@@ -4,14 +4,55 @@ import java.util.List;
 
 /**
  * The raw circuit description:
- *   • one power source
+ *   • one or more power sources
  *   • a list of dust blocks (initial positions and powers)
  *   • transparent blocks
  *   • blocking blocks
+ * Inputs may give a single {@code powerSource}, a {@code powerSources} list, or both
+ * (in which case the single source must be the first of the list). After construction
+ * {@code powerSources} holds every source and {@code powerSource} is its first element.
  */
 public record Instance(
         PowerSourceSpec powerSource,
+        List<PowerSourceSpec> powerSources,
         List<DustBlockSpec> dustBlocks,
         List<TransparentBlockSpec> transparentBlocks,
         List<BlockingBlockSpec> blockingBlocks
-) {}
\ No newline at end of file
+) {
+    /**
+     * Normalises the two ways of giving power sources.
+     */
+    public Instance {
+        powerSources = resolveSources(powerSource, powerSources);
+        powerSource = powerSources.isEmpty() ? null : powerSources.get(0);
+    }
+
+    /**
+     * A circuit with a single power source.
+     */
+    public Instance(PowerSourceSpec powerSource,
+                    List<DustBlockSpec> dustBlocks,
+                    List<TransparentBlockSpec> transparentBlocks,
+                    List<BlockingBlockSpec> blockingBlocks) {
+        this(powerSource, null, dustBlocks, transparentBlocks, blockingBlocks);
+    }
+
+    /**
+     * Combines a single {@code powerSource} and a {@code powerSources} list into one list.
+     * @throws IllegalArgumentException if both are given and the single source
+     *                                  is not at the position of the list's first
+     */
+    static List<PowerSourceSpec> resolveSources(PowerSourceSpec single, List<PowerSourceSpec> list) {
+        if (list == null || list.isEmpty()) {
+            return single == null ? List.of() : List.of(single);
+        }
+        if (single != null) {
+            PowerSourceSpec first = list.get(0);
+            if (single.x() != first.x() || single.y() != first.y() || single.z() != first.z()) {
+                throw new IllegalArgumentException(
+                        "powerSource must match the first entry of powerSources when both are given");
+            }
+        }
+        return List.copyOf(list);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.dustcalc.input;
+
+/**
+ * Receives the parts of a circuit Instance one by one as a streaming loader parses them.
+ * Calls may arrive in any order, following the layout of the input.
+ */
+public interface InstanceHandler {
+    /** Called once per power source, in source order. */
+    void powerSource(PowerSourceSpec spec);
+
+    void dustBlock(int x, int y, int z, int power);
+
+    void transparentBlock(int x, int y, int z, String blockID);
+
+    void blockingBlock(int x, int y, int z, String blockID);
+}
@@ -12,4 +12,13 @@ public interface InstanceLoader {
      * @throws IOException on read/parse failure
      */
     Instance load() throws IOException;
+
+    /**
+     * Picks the loader by file extension: ".dcb" for the binary circuit format, JSON otherwise.
+     */
+    static InstanceLoader forPath(String path) {
+        return path.endsWith(".dcb")
+                ? new BinaryInstanceLoader(path)
+                : new JsonInstanceLoader(path);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package com.example.dustcalc.input;
+
+import java.nio.file.Path;
+
+/**
+ * Converts a JSON circuit file into the binary circuit format:
+ * {@code java -cp dustcalc.jar com.example.dustcalc.input.JsonToBinaryConverter <in.json> <out.dcb>}
+ */
+public class JsonToBinaryConverter {
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: JsonToBinaryConverter <input.json> <output.dcb>");
+            System.exit(1);
+        }
+        try {
+            Instance instance = new StreamingJsonInstanceLoader(args[0]).load();
+            new BinaryInstanceWriter().write(instance, Path.of(args[1]));
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(2);
+        }
+    }
+}
@@ -18,9 +18,16 @@ public record PowerSourceSpec(
         boolean[] powerMask
 ) {
     /**
-     * Validates that the powerMask has exactly six entries.
+     * Validates that finalPower is a power level and the powerMask has exactly
+     * six entries, so a bad source fails while the input is loaded. Levels
+     * above 15 used to be accepted and gave dusts levels above 15; the tracers
+     * keep per-level counters and cannot represent them.
      */
     public PowerSourceSpec {
+        if (finalPower < 0 || finalPower > 15) {
+            throw new IllegalArgumentException("Power source at " + x + "," + y + "," + z
+                    + ": finalPower must be 0-15, got " + finalPower);
+        }
         if (powerMask == null || powerMask.length != 6) {
             throw new IllegalArgumentException(
                     "powerMask must be non-null and length 6: [WEST, EAST, DOWN, UP, NORTH, SOUTH]"
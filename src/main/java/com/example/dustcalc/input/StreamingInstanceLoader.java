@@ -0,0 +1,50 @@
+package com.example.dustcalc.input;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An InstanceLoader that can also push the circuit into an InstanceHandler
+ * while it reads, without materialising spec records.
+ */
+public interface StreamingInstanceLoader extends InstanceLoader {
+    /**
+     * Reads the input and reports every part of the circuit to {@code handler}.
+     * @throws IOException on read/parse failure
+     */
+    void stream(InstanceHandler handler) throws IOException;
+
+    /**
+     * Collects the streamed parts into an Instance.
+     */
+    @Override
+    default Instance load() throws IOException {
+        List<PowerSourceSpec> sources = new ArrayList<>();
+        List<DustBlockSpec> dust = new ArrayList<>();
+        List<TransparentBlockSpec> transparent = new ArrayList<>();
+        List<BlockingBlockSpec> blocking = new ArrayList<>();
+        stream(new InstanceHandler() {
+            @Override
+            public void powerSource(PowerSourceSpec spec) {
+                sources.add(spec);
+            }
+
+            @Override
+            public void dustBlock(int x, int y, int z, int power) {
+                dust.add(new DustBlockSpec(x, y, z, power));
+            }
+
+            @Override
+            public void transparentBlock(int x, int y, int z, String blockID) {
+                transparent.add(new TransparentBlockSpec(x, y, z, blockID));
+            }
+
+            @Override
+            public void blockingBlock(int x, int y, int z, String blockID) {
+                blocking.add(new BlockingBlockSpec(x, y, z, blockID));
+            }
+        });
+        return new Instance(null, sources, dust, transparent, blocking);
+    }
+}
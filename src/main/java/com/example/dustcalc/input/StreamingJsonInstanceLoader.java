@@ -0,0 +1,150 @@
+package com.example.dustcalc.input;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the same JSON layout as JsonInstanceLoader with Jackson's streaming
+ * JsonParser, handing each block to an InstanceHandler as soon as it is parsed;
+ * power sources are reported once the whole object has been read.
+ * Memory use is independent of the file size apart from what the handler keeps.
+ */
+public class StreamingJsonInstanceLoader implements StreamingInstanceLoader {
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private final String inputPath;
+
+    public StreamingJsonInstanceLoader(String inputPath) {
+        this.inputPath = inputPath;
+    }
+
+    @Override
+    public void stream(InstanceHandler handler) throws IOException {
+        try (JsonParser p = FACTORY.createParser(new File(inputPath))) {
+            PowerSourceSpec single = null;
+            List<PowerSourceSpec> sources = null;
+            expect(p, p.nextToken(), JsonToken.START_OBJECT);
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.getCurrentName();
+                JsonToken value = p.nextToken();
+                switch (field) {
+                    case "powerSource" -> {
+                        if (value != JsonToken.VALUE_NULL) {
+                            single = readPowerSource(p);
+                        }
+                    }
+                    case "powerSources" -> {
+                        if (value != JsonToken.VALUE_NULL) {
+                            expect(p, value, JsonToken.START_ARRAY);
+                            sources = new ArrayList<>();
+                            while (p.nextToken() != JsonToken.END_ARRAY) {
+                                sources.add(readPowerSource(p));
+                            }
+                        }
+                    }
+                    case "dustBlocks" -> readBlocks(p, value, handler, BlockKind.DUST);
+                    case "transparentBlocks" -> readBlocks(p, value, handler, BlockKind.TRANSPARENT);
+                    case "blockingBlocks" -> readBlocks(p, value, handler, BlockKind.BLOCKING);
+                    default -> throw new JsonParseException(p, "Unrecognized field \"" + field + "\"");
+                }
+            }
+            // Sources may appear anywhere in the object, so they are reported last
+            try {
+                new Instance(single, sources, List.of(), List.of(), List.of()).powerSources()
+                        .forEach(handler::powerSource);
+            } catch (IllegalArgumentException e) {
+                throw new JsonParseException(p, e.getMessage(), e);
+            }
+        }
+    }
+
+    private enum BlockKind { DUST, TRANSPARENT, BLOCKING }
+
+    private static void readBlocks(JsonParser p, JsonToken value, InstanceHandler handler, BlockKind kind)
+            throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return;
+        }
+        expect(p, value, JsonToken.START_ARRAY);
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            expect(p, p.currentToken(), JsonToken.START_OBJECT);
+            int x = 0, y = 0, z = 0, power = 0;
+            String blockID = null;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.getCurrentName();
+                p.nextToken();
+                switch (field) {
+                    case "x" -> x = p.getIntValue();
+                    case "y" -> y = p.getIntValue();
+                    case "z" -> z = p.getIntValue();
+                    case "power" -> {
+                        if (kind != BlockKind.DUST) throw new JsonParseException(p, "Unrecognized field \"power\"");
+                        power = p.getIntValue();
+                    }
+                    case "blockID" -> {
+                        if (kind == BlockKind.DUST) throw new JsonParseException(p, "Unrecognized field \"blockID\"");
+                        blockID = p.getValueAsString();
+                    }
+                    default -> throw new JsonParseException(p, "Unrecognized field \"" + field + "\"");
+                }
+            }
+            if (kind == BlockKind.DUST && (power < 0 || power > 15)) {
+                throw new JsonParseException(p, "Dust at " + x + "," + y + "," + z
+                        + ": power must be 0-15, got " + power);
+            }
+            switch (kind) {
+                case DUST -> handler.dustBlock(x, y, z, power);
+                case TRANSPARENT -> handler.transparentBlock(x, y, z, blockID);
+                case BLOCKING -> handler.blockingBlock(x, y, z, blockID);
+            }
+        }
+    }
+
+    private static PowerSourceSpec readPowerSource(JsonParser p) throws IOException {
+        expect(p, p.currentToken(), JsonToken.START_OBJECT);
+        int x = 0, y = 0, z = 0, finalPower = 0;
+        boolean[] mask = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            JsonToken value = p.nextToken();
+            switch (field) {
+                case "x" -> x = p.getIntValue();
+                case "y" -> y = p.getIntValue();
+                case "z" -> z = p.getIntValue();
+                case "finalPower" -> finalPower = p.getIntValue();
+                case "powerMask" -> mask = value == JsonToken.VALUE_NULL ? null : readMask(p, value);
+                default -> throw new JsonParseException(p, "Unrecognized field \"" + field + "\"");
+            }
+        }
+        try {
+            return new PowerSourceSpec(x, y, z, finalPower, mask);
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException(p, e.getMessage(), e);
+        }
+    }
+
+    private static boolean[] readMask(JsonParser p, JsonToken value) throws IOException {
+        expect(p, value, JsonToken.START_ARRAY);
+        boolean[] mask = new boolean[6];
+        int n = 0;
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            boolean b = p.getBooleanValue();
+            if (n < mask.length) mask[n] = b;
+            n++;
+        }
+        return n == mask.length ? mask : new boolean[n];
+    }
+
+    private static void expect(JsonParser p, JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new JsonParseException(p, "Expected " + expected + " but found " + actual);
+        }
+    }
+}
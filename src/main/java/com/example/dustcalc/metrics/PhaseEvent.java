@@ -0,0 +1,18 @@
+package com.example.dustcalc.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning one pipeline phase (load, build, order, ...).
+ */
+@Name("com.example.dustcalc.Phase")
+@Label("Phase")
+@Category("dustCalc")
+@Description("One phase of loading, building and tracing a circuit")
+class PhaseEvent extends jdk.jfr.Event {
+    @Label("Phase")
+    String phase;
+}
@@ -0,0 +1,77 @@
+package com.example.dustcalc.metrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Wall-clock timer for named pipeline phases. Each phase is also emitted as a
+ * JFR event when a recording has it enabled. A phase timed more than once
+ * adds up.
+ * <pre>
+ *   Graph g = timer.time("build", () -&gt; builder.build(instance));
+ *   timer.time("order", () -&gt; calculator.applyOrdering(g));
+ * </pre>
+ */
+public final class PhaseTimer {
+    private final Map<String, Long> nanos = new LinkedHashMap<>();
+
+    /** A phase body without a result; may throw a checked exception. */
+    @FunctionalInterface
+    public interface Body<E extends Exception> {
+        void run() throws E;
+    }
+
+    /** A phase body with a result; may throw a checked exception. */
+    @FunctionalInterface
+    public interface Task<T, E extends Exception> {
+        T get() throws E;
+    }
+
+    /**
+     * Runs {@code body} as phase {@code name}. Its time is counted even if it throws.
+     */
+    public <E extends Exception> void time(String name, Body<E> body) throws E {
+        time(name, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs {@code task} as phase {@code name}. Its time is counted even if it throws.
+     * @return the task's result
+     */
+    public <T, E extends Exception> T time(String name, Task<T, E> task) throws E {
+        long start = System.nanoTime();
+        PhaseEvent event = new PhaseEvent();
+        event.begin();
+        try {
+            return task.get();
+        } finally {
+            nanos.merge(name, System.nanoTime() - start, Long::sum);
+            if (event.shouldCommit()) {
+                event.phase = name;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * @return total nanoseconds per phase, in the order phases first finished
+     */
+    public Map<String, Long> getNanos() {
+        return Collections.unmodifiableMap(nanos);
+    }
+
+    /**
+     * @return one "phase: N.NNN ms" line per phase
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        nanos.forEach((name, ns) -> sb.append(name).append(": ")
+                .append(String.format(Locale.ROOT, "%.3f", ns / 1e6)).append(" ms\n"));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.dustcalc.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event carrying the counters of a PropagationMetrics.
+ */
+@Name("com.example.dustcalc.Propagation")
+@Label("Propagation")
+@Category("dustCalc")
+@Description("Visit and update counters of a propagation run")
+class PropagationEvent extends jdk.jfr.Event {
+    @Label("Visits")
+    long visits;
+
+    @Label("Updates")
+    long updates;
+
+    @Label("Redundant Visits")
+    long redundantVisits;
+
+    @Label("Peak Depth")
+    int peakDepth;
+}
@@ -0,0 +1,96 @@
+package com.example.dustcalc.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Counters for one or more propagation runs, filled by a tracer that was given
+ * an instance; tracers without one skip every call, so metrics cost nothing
+ * when disabled. Not thread-safe: use one instance per tracer.
+ * <ul>
+ *   <li>visits: prompts that pulled a node's power</li>
+ *   <li>updates: visits that changed the power</li>
+ *   <li>redundant visits: visits that left the power unchanged</li>
+ *   <li>peak depth: deepest update cascade, in stack frames</li>
+ *   <li>fan-out: per update, how many updateTargets the changed node prompts</li>
+ * </ul>
+ */
+public final class PropagationMetrics {
+    /** A node has at most 42 update slots; larger fan-outs share the last bucket. */
+    public static final int MAX_FAN_OUT = 42;
+
+    private long visits;
+    private long updates;
+    private int peakDepth;
+    private final long[] fanOut = new long[MAX_FAN_OUT + 1];
+
+    /** Records a prompt that left the node's power unchanged. */
+    public void redundantVisit() {
+        visits++;
+    }
+
+    /** Records a prompt that changed the node's power; it will prompt {@code fanOut} targets. */
+    public void update(int fanOut) {
+        visits++;
+        updates++;
+        this.fanOut[Math.min(fanOut, MAX_FAN_OUT)]++;
+    }
+
+    /** Records the current cascade depth. */
+    public void depth(int depth) {
+        if (depth > peakDepth) {
+            peakDepth = depth;
+        }
+    }
+
+    public long getVisits() { return visits; }
+    public long getUpdates() { return updates; }
+    public long getRedundantVisits() { return visits - updates; }
+    public int getPeakDepth() { return peakDepth; }
+
+    /**
+     * @return number of updates per fan-out, indexed 0..{@link #MAX_FAN_OUT}
+     */
+    public long[] getFanOutHistogram() {
+        return fanOut.clone();
+    }
+
+    /** Clears every counter. */
+    public void reset() {
+        visits = 0;
+        updates = 0;
+        peakDepth = 0;
+        Arrays.fill(fanOut, 0);
+    }
+
+    /**
+     * Emits the current counters as a JFR event, if a recording has it enabled.
+     */
+    public void commitEvent() {
+        PropagationEvent event = new PropagationEvent();
+        if (event.shouldCommit()) {
+            event.visits = visits;
+            event.updates = updates;
+            event.redundantVisits = getRedundantVisits();
+            event.peakDepth = peakDepth;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return the counters as "key: value" lines; the histogram lists non-empty buckets only
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("visits: ").append(visits).append('\n');
+        sb.append("updates: ").append(updates).append('\n');
+        sb.append("redundant visits: ").append(getRedundantVisits()).append('\n');
+        sb.append("peak depth: ").append(peakDepth).append('\n');
+        sb.append("fan-out:");
+        for (int i = 0; i < fanOut.length; i++) {
+            if (fanOut[i] != 0) {
+                sb.append(' ').append(i).append('=').append(fanOut[i]);
+            }
+        }
+        return sb.append('\n').toString();
+    }
+}
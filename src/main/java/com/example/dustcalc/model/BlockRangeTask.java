@@ -0,0 +1,67 @@
+package com.example.dustcalc.model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Splits a range of block ids across a ForkJoinPool. Used by the parallel
+ * modes of CircuitGraphBuilder and UpdateOrderCalculator, where the work for
+ * each block only writes that block's own edge lists.
+ */
+class BlockRangeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private static final int THRESHOLD = 4096;
+
+    private final int from;
+    private final int to;
+    // Tasks only live for one forEach call and are never serialized
+    private final transient RangeWork work;
+
+    /** Work for a contiguous range of ids, [from, to). */
+    @FunctionalInterface
+    interface RangeWork {
+        void run(int from, int to);
+    }
+
+    private BlockRangeTask(int from, int to, RangeWork work) {
+        this.from = from;
+        this.to = to;
+        this.work = work;
+    }
+
+    /**
+     * Runs {@code work} for every id in [0, count), in parallel on {@code pool}
+     * or sequentially in id order when {@code pool} is null.
+     */
+    static void forEach(ForkJoinPool pool, int count, IntConsumer work) {
+        forEachRange(pool, count, (from, to) -> {
+            for (int id = from; id < to; id++) {
+                work.accept(id);
+            }
+        });
+    }
+
+    /**
+     * Splits [0, count) into ranges of at most THRESHOLD ids and runs {@code work}
+     * once per range, in parallel on {@code pool}, or once for the whole range when
+     * {@code pool} is null. Lets the work allocate scratch state per range, not per id.
+     */
+    static void forEachRange(ForkJoinPool pool, int count, RangeWork work) {
+        if (pool == null || count <= THRESHOLD) {
+            work.run(0, count);
+        } else {
+            pool.invoke(new BlockRangeTask(0, count, work));
+        }
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= THRESHOLD) {
+            work.run(from, to);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        invokeAll(new BlockRangeTask(from, mid, work), new BlockRangeTask(mid, to, work));
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.dustcalc.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Enforces an UpdateBudget for a tracer: counts visits and updates of the
+ * current trace, per node too, and throws UpdateBudgetExceededException with a
+ * BudgetReport when a limit is reached. Engines pass their work stack so that
+ * the report can name the cycles the cascade is in.
+ */
+final class BudgetMeter {
+    private static final int CLOCK_INTERVAL = 1024;
+    private static final int HOTTEST = 10;
+    private static final int MAX_CYCLES = 10;
+
+    private final UpdateBudget budget;
+    private final int[] nodeUpdates;
+    // Nodes with a non-zero count, so start() does not clear every node
+    private int[] touched = new int[64];
+    private int touchedCount;
+    private long updates;
+    private long visits;
+    private long start;
+
+    BudgetMeter(UpdateBudget budget, int nodeCount) {
+        this.budget = budget;
+        this.nodeUpdates = new int[nodeCount];
+    }
+
+    /** Starts a new trace: clears every counter and restarts the clock. */
+    void start() {
+        for (int i = 0; i < touchedCount; i++) {
+            nodeUpdates[touched[i]] = 0;
+        }
+        touchedCount = 0;
+        updates = 0;
+        visits = 0;
+        start = System.nanoTime();
+    }
+
+    /**
+     * Records a prompt of a node whose ancestors are {@code stack[0..depth)},
+     * before the node is looked at. If a limit is reached, throws without
+     * counting the prompt.
+     */
+    void visit(int id, int[] stack, int depth) {
+        if (budget.maxVisits() != 0 && visits == budget.maxVisits()) {
+            exceeded("visits > " + budget.maxVisits(), id, stack, depth);
+        }
+        if (budget.maxTime() != null && (visits + 1) % CLOCK_INTERVAL == 0
+                && System.nanoTime() - start > budget.maxTime().toNanos()) {
+            exceeded("time > " + budget.maxTime().toMillis() + " ms", id, stack, depth);
+        }
+        visits++;
+    }
+
+    /**
+     * Records a power change of node {@code id}, whose ancestors are {@code stack[0..depth)},
+     * before it is applied. If a limit is reached, throws without counting it,
+     * so the report, the sink and the power state all stop at the same update.
+     */
+    void update(int id, int[] stack, int depth) {
+        if (budget.maxUpdates() != 0 && updates == budget.maxUpdates()) {
+            exceeded("updates > " + budget.maxUpdates(), id, stack, depth);
+        }
+        if (budget.maxNodeUpdates() != 0 && nodeUpdates[id] == budget.maxNodeUpdates()) {
+            exceeded("node updates > " + budget.maxNodeUpdates(), id, stack, depth);
+        }
+        updates++;
+        if (nodeUpdates[id]++ == 0) {
+            if (touchedCount == touched.length) {
+                touched = Arrays.copyOf(touched, touchedCount * 2);
+            }
+            touched[touchedCount++] = id;
+        }
+    }
+
+    private void exceeded(String limit, int id, int[] stack, int depth) {
+        throw new UpdateBudgetExceededException(new BudgetReport(limit, updates, visits,
+                System.nanoTime() - start, hottest(), cycles(id, stack, depth)));
+    }
+
+    private List<BudgetReport.HotNode> hottest() {
+        Integer[] ids = new Integer[touchedCount];
+        for (int i = 0; i < touchedCount; i++) {
+            ids[i] = touched[i];
+        }
+        Arrays.sort(ids, (a, b) -> nodeUpdates[a] != nodeUpdates[b]
+                ? Integer.compare(nodeUpdates[b], nodeUpdates[a]) : Integer.compare(a, b));
+        List<BudgetReport.HotNode> hot = new ArrayList<>();
+        for (int i = 0; i < Math.min(HOTTEST, ids.length); i++) {
+            hot.add(new BudgetReport.HotNode(ids[i], nodeUpdates[ids[i]]));
+        }
+        return hot;
+    }
+
+    /**
+     * Finds the runs of the path stack[0..depth) + id that end where they
+     * started, rotated to start at their lowest id, without repeats.
+     */
+    private static List<List<Integer>> cycles(int id, int[] stack, int depth) {
+        Set<List<Integer>> cycles = new LinkedHashSet<>();
+        Map<Integer, Integer> lastSeen = new HashMap<>();
+        for (int i = 0; i <= depth && cycles.size() < MAX_CYCLES; i++) {
+            int node = i < depth ? stack[i] : id;
+            Integer prev = lastSeen.put(node, i);
+            if (prev == null) continue;
+            List<Integer> cycle = new ArrayList<>(i - prev);
+            int lowest = 0;
+            for (int j = prev; j < i; j++) {
+                cycle.add(stack[j]);
+                if (stack[j] < cycle.get(lowest)) {
+                    lowest = j - prev;
+                }
+            }
+            List<Integer> rotated = new ArrayList<>(cycle.subList(lowest, cycle.size()));
+            rotated.addAll(cycle.subList(0, lowest));
+            cycles.add(rotated);
+        }
+        return new ArrayList<>(cycles);
+    }
+}
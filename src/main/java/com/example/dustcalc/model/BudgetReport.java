@@ -0,0 +1,52 @@
+package com.example.dustcalc.model;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.function.IntFunction;
+
+/**
+ * State of a trace stopped by its UpdateBudget.
+ *
+ * @param limit        the limit that was reached
+ * @param updates      power changes so far
+ * @param visits       prompts so far
+ * @param elapsedNanos wall-clock time since the trace started
+ * @param hottestNodes the nodes updated most often, most updated first
+ * @param cycles       update cycles on the cascade stack when it stopped: each
+ *                     is a run of node ids, starting at its lowest id, that
+ *                     the cascade passed through and then re-entered
+ */
+public record BudgetReport(String limit, long updates, long visits, long elapsedNanos,
+                           List<HotNode> hottestNodes, List<List<Integer>> cycles) implements Serializable {
+
+    /** A node and how many times its power changed. */
+    public record HotNode(int id, int updates) implements Serializable {}
+
+    public BudgetReport {
+        hottestNodes = List.copyOf(hottestNodes);
+        cycles = List.copyOf(cycles);
+    }
+
+    /**
+     * @param labeler names a node id, e.g. a tracer's labelOf
+     * @return a multi-line report, one "name: value" per line
+     */
+    public String summary(IntFunction<String> labeler) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("limit: ").append(limit).append('\n');
+        sb.append("updates: ").append(updates).append('\n');
+        sb.append("visits: ").append(visits).append('\n');
+        sb.append(String.format("elapsed: %.3f ms%n", elapsedNanos / 1e6));
+        for (HotNode n : hottestNodes) {
+            sb.append("hot node: ").append(labeler.apply(n.id())).append(" updates=").append(n.updates()).append('\n');
+        }
+        for (List<Integer> cycle : cycles) {
+            StringJoiner path = new StringJoiner(" -> ");
+            cycle.forEach(id -> path.add(labeler.apply(id)));
+            path.add(labeler.apply(cycle.get(0)));
+            sb.append("cycle: ").append(path).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.dustcalc.model;
+
+import com.example.dustcalc.input.Instance;
+import com.example.dustcalc.input.PowerSourceSpec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a wired and ordered dust graph up to date while single blocks are
+ * added or removed, patching only the neighbourhood of the edit instead of
+ * re-running CircuitGraphBuilder and UpdateOrderCalculator over the whole circuit.
+ * <p>
+ * A dust's powerTargets depend only on dusts at the 12 dust offsets and on
+ * obstacles directly above or below them, all inside the 3×3×3 cube around
+ * it; its updateTargets depend only on dusts in the 25-position update region.
+ * After every edit each block's lists are the same, in the same order, as a
+ * full rebuild of the edited circuit would produce. Node ids stay dense:
+ * removing a dust moves the last dust into its id, so ids may differ from a
+ * rebuild's (see {@link SpatialIndex#remove}).
+ */
+public class CircuitEditor {
+    private final SpatialIndex index;
+    private final PositionSet blocking;
+    private final PositionSet transparent;
+    private final List<PowerSourceBlock> sources;
+    private final List<PowerSourceSpec> sourceSpecs;
+    // Update targets of the block being reordered
+    private final int[] scratch = new int[UpdateOrderCalculator.SLOTS];
+
+    /**
+     * Builds and orders the full graph of {@code instance} once.
+     */
+    public CircuitEditor(Instance instance) {
+        this.index = new SpatialIndex(instance.dustBlocks().size());
+        CircuitGraphBuilder.Assembly assembly = CircuitGraphBuilder.collect(instance, index);
+        new CircuitGraphBuilder().wire(assembly);
+        new UpdateOrderCalculator().applyOrdering(index.blocks(), index);
+        this.blocking = assembly.blocking;
+        this.transparent = assembly.transparent;
+        this.sources = assembly.sourceBlocks;
+        this.sourceSpecs = List.copyOf(assembly.sources);
+    }
+
+    /**
+     * Adds a dust, or sets the power of the dust already at (x,y,z).
+     * @return the dust at (x,y,z)
+     * @throws IllegalArgumentException if {@code power} is outside 0..15
+     */
+    public DustBlock addDust(int x, int y, int z, int power) {
+        if (power < 0 || power > 15) {
+            throw new IllegalArgumentException("Dust power out of range at " + x + "," + y + "," + z + ": " + power);
+        }
+        DustBlock existing = index.get(x, y, z);
+        if (existing != null) {
+            existing.setPower(power);
+            return existing;
+        }
+        DustBlock added = new DustBlock(x, y, z, power);
+        index.put(added);
+        rewirePower(x, y, z);
+        reorder(x, y, z);
+        return added;
+    }
+
+    /**
+     * Removes the dust at (x,y,z) and every edge to or from it.
+     * @return the removed dust, or null if there was none
+     */
+    public DustBlock removeDust(int x, int y, int z) {
+        DustBlock removed = index.remove(x, y, z);
+        if (removed != null) {
+            removed.clearPowerTargets();
+            removed.clearUpdateTargets();
+            rewirePower(x, y, z);
+            reorder(x, y, z);
+        }
+        return removed;
+    }
+
+    /**
+     * Adds a blocking (opaque, conductive) block at (x,y,z).
+     * @return true if there was none there yet
+     */
+    public boolean addBlocking(int x, int y, int z) {
+        if (!blocking.add(x, y, z)) {
+            return false;
+        }
+        rewirePower(x, y, z);
+        return true;
+    }
+
+    /**
+     * @return true if a blocking block was removed
+     */
+    public boolean removeBlocking(int x, int y, int z) {
+        if (!blocking.remove(x, y, z)) {
+            return false;
+        }
+        rewirePower(x, y, z);
+        return true;
+    }
+
+    /**
+     * Adds a transparent block (e.g. glass) at (x,y,z).
+     * @return true if there was none there yet
+     */
+    public boolean addTransparent(int x, int y, int z) {
+        if (!transparent.add(x, y, z)) {
+            return false;
+        }
+        rewirePower(x, y, z);
+        return true;
+    }
+
+    /**
+     * @return true if a transparent block was removed
+     */
+    public boolean removeTransparent(int x, int y, int z) {
+        if (!transparent.remove(x, y, z)) {
+            return false;
+        }
+        rewirePower(x, y, z);
+        return true;
+    }
+
+    /**
+     * @return the index holding the current graph; valid until the next edit
+     */
+    public SpatialIndex index() {
+        return index;
+    }
+
+    /**
+     * @return the dusts of the current graph, in id order
+     */
+    public List<DustBlock> graph() {
+        return new ArrayList<>(index.blocks());
+    }
+
+    /**
+     * Compiles the current graph, with sources numbered in input order.
+     */
+    public CompiledCircuit compile() {
+        return CompiledCircuit.compile(index, sourceSpecs);
+    }
+
+    /** Recomputes the powerTargets of every dust in the 3×3×3 cube around (x,y,z). */
+    private void rewirePower(int x, int y, int z) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    DustBlock b = index.get(x + dx, y + dy, z + dz);
+                    if (b != null) {
+                        b.clearPowerTargets();
+                        CircuitGraphBuilder.wireDust(b, index, blocking, transparent);
+                        CircuitGraphBuilder.wireSources(b, sources);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Recomputes the updateTargets of every dust whose update region contains (x,y,z). */
+    private void reorder(int x, int y, int z) {
+        for (int[] off : UpdateOrderCalculator.UPDATE_REGION) {
+            DustBlock b = index.get(x + off[0], y + off[1], z + off[2]);
+            if (b != null) {
+                UpdateOrderCalculator.orderBlock(b, index, scratch);
+            }
+        }
+    }
+}
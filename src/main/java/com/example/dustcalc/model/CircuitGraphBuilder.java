@@ -1,16 +1,29 @@
 package com.example.dustcalc.model;
 
 import com.example.dustcalc.input.Instance;
+import com.example.dustcalc.input.InstanceHandler;
 import com.example.dustcalc.input.DustBlockSpec;
 import com.example.dustcalc.input.BlockingBlockSpec;
+import com.example.dustcalc.input.PowerSourceSpec;
+import com.example.dustcalc.input.StreamingInstanceLoader;
 import com.example.dustcalc.input.TransparentBlockSpec;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Builds both dust and source power blocks, wiring upstream connectivity.
  */
 public class CircuitGraphBuilder {
+    /**
+     * Version of the graphs this builder and UpdateOrderCalculator produce. Bump it
+     * whenever wiring, ordering or compilation output changes, so that persisted
+     * snapshots (see CircuitSnapshot) built by older code are rebuilt.
+     */
+    public static final int VERSION = 1;
+
     // Offsets for dust-dust connectivity: horizontal + staircase
     private static final int[][] DUST_OFFSETS = {
             { 1,  0,  0}, {-1,  0,  0},
@@ -24,79 +37,365 @@ public class CircuitGraphBuilder {
     // Cardinal offsets for source connectivity: WEST, EAST, DOWN, UP, NORTH, SOUTH
     private static final int[][] SOURCE_OFFSETS = PowerSourceBlock.getSourceOffsets();
 
+    private final NodeOrder order;
+    // Pool for wiring dust-dust edges, or null to wire sequentially
+    private final ForkJoinPool pool;
+
+    public CircuitGraphBuilder() {
+        this(NodeOrder.INPUT, null);
+    }
+
+    /**
+     * Creates a builder that wires dust-dust edges in parallel on {@code pool}.
+     * Each block only appends to its own powerTargets, in the same order as
+     * the sequential build, so the resulting graph is identical.
+     */
+    public CircuitGraphBuilder(ForkJoinPool pool) {
+        this(NodeOrder.INPUT, pool);
+    }
+
+    /**
+     * @param order how node ids are assigned
+     * @param pool  pool for parallel wiring, or null for a sequential build
+     */
+    public CircuitGraphBuilder(NodeOrder order, ForkJoinPool pool) {
+        this.order = order;
+        this.pool = pool;
+    }
 
     /**
-     * Constructs DustBlock nodes and a single PowerSourceBlock, wiring upstream powerTargets.
+     * Constructs DustBlock nodes and one PowerSourceBlock per source, wiring upstream powerTargets.
      */
     public List<DustBlock> build(Instance instance) {
-        // 1) Instantiate PowerSourceBlock
-        PowerSourceBlock source = new PowerSourceBlock(instance.powerSource());
+        return build(instance, new SpatialIndex(instance.dustBlocks().size()));
+    }
 
-        // 2) Instantiate DustBlock for each spec
-        Map<String, DustBlock> map = new HashMap<>();
+    /**
+     * Same as {@link #build(Instance)}, but registers every DustBlock in the given
+     * (empty) index so later stages can reuse it instead of rebuilding their own lookup.
+     * The returned list is in index id order, as defined by this builder's NodeOrder;
+     * when the input repeats a position, the last spec wins.
+     */
+    public List<DustBlock> build(Instance instance, SpatialIndex index) {
+        return wire(collect(instance, index));
+    }
+
+    /**
+     * Registers the instance's dusts in {@code index} and its obstacles and sources
+     * in a new Assembly, without wiring anything yet.
+     */
+    static Assembly collect(Instance instance, SpatialIndex index) {
+        Assembly assembly = new Assembly(index,
+                instance.blockingBlocks().size(), instance.transparentBlocks().size());
+        replay(instance, assembly);
+        return assembly;
+    }
+
+    /** Reports every part of {@code instance} to {@code handler}, as a streaming loader would. */
+    private static void replay(Instance instance, InstanceHandler handler) {
+        instance.powerSources().forEach(handler::powerSource);
         for (DustBlockSpec spec : instance.dustBlocks()) {
-            DustBlock db = new DustBlock(spec.x(), spec.y(), spec.z(), spec.power());
-            map.put(key(spec.x(), spec.y(), spec.z()), db);
+            handler.dustBlock(spec.x(), spec.y(), spec.z(), spec.power());
+        }
+        for (BlockingBlockSpec spec : instance.blockingBlocks()) {
+            handler.blockingBlock(spec.x(), spec.y(), spec.z(), spec.blockID());
+        }
+        for (TransparentBlockSpec spec : instance.transparentBlocks()) {
+            handler.transparentBlock(spec.x(), spec.y(), spec.z(), spec.blockID());
+        }
+    }
+
+    /**
+     * Builds the graph straight from a streaming loader: dusts go into the index
+     * and obstacles into position sets while the input is parsed, so no spec
+     * records or Instance are kept.
+     */
+    public List<DustBlock> build(StreamingInstanceLoader loader, SpatialIndex index) throws IOException {
+        Assembly assembly = new Assembly(index, 0, 0);
+        loader.stream(assembly);
+        return wire(assembly);
+    }
+
+    /**
+     * Collects dusts, obstacles and sources; blocks of each kind may arrive in any order.
+     */
+    static final class Assembly implements InstanceHandler {
+        final SpatialIndex index;
+        final PositionSet blocking;
+        final PositionSet transparent;
+        final List<PowerSourceSpec> sources = new ArrayList<>();
+        // Filled in by wire(), in source order
+        final List<PowerSourceBlock> sourceBlocks = new ArrayList<>();
+
+        Assembly(SpatialIndex index, int blockingCount, int transparentCount) {
+            this.index = index;
+            this.blocking = new PositionSet(blockingCount);
+            this.transparent = new PositionSet(transparentCount);
+        }
+
+        @Override
+        public void powerSource(PowerSourceSpec spec) {
+            sources.add(spec);
+        }
+
+        @Override
+        public void dustBlock(int x, int y, int z, int power) {
+            index.put(new DustBlock(x, y, z, power));
+        }
+
+        @Override
+        public void transparentBlock(int x, int y, int z, String blockID) {
+            transparent.add(x, y, z);
+        }
+
+        @Override
+        public void blockingBlock(int x, int y, int z, String blockID) {
+            blocking.add(x, y, z);
+        }
+    }
+
+    /**
+     * Builds the wired and ordered graph into an OffHeapNodeStore instead of
+     * DustBlock objects. Node ids group dusts by region (see OffHeapNodeStore)
+     * whatever this builder's NodeOrder, and edges are wired sequentially;
+     * obstacles are kept in on-heap position sets. The caller closes the store.
+     * @param dir directory for the store's memory-mapped files, or null to use direct memory
+     */
+    public OffHeapNodeStore buildOffHeap(Instance instance, Path dir) throws IOException {
+        OffHeapAssembly assembly = new OffHeapAssembly(new OffHeapNodeStore(dir),
+                instance.blockingBlocks().size(), instance.transparentBlocks().size());
+        try {
+            replay(instance, assembly);
+        } catch (RuntimeException e) {
+            discard(assembly.store, e);
+            throw e;
+        }
+        return wireOffHeap(assembly);
+    }
+
+    /**
+     * Same as {@link #buildOffHeap(Instance, Path)}, streaming the input so that
+     * no dust is ever held on the heap.
+     */
+    public OffHeapNodeStore buildOffHeap(StreamingInstanceLoader loader, Path dir) throws IOException {
+        OffHeapAssembly assembly = new OffHeapAssembly(new OffHeapNodeStore(dir), 0, 0);
+        try {
+            loader.stream(assembly);
+        } catch (IOException | RuntimeException e) {
+            discard(assembly.store, e);
+            throw e;
         }
+        return wireOffHeap(assembly);
+    }
+
+    /** Stages dusts in an OffHeapNodeStore and collects obstacles and sources. */
+    private static final class OffHeapAssembly implements InstanceHandler {
+        final OffHeapNodeStore store;
+        final PositionSet blocking;
+        final PositionSet transparent;
+        final List<PowerSourceSpec> sources = new ArrayList<>();
+
+        OffHeapAssembly(OffHeapNodeStore store, int blockingCount, int transparentCount) {
+            this.store = store;
+            this.blocking = new PositionSet(blockingCount);
+            this.transparent = new PositionSet(transparentCount);
+        }
+
+        @Override
+        public void powerSource(PowerSourceSpec spec) {
+            sources.add(spec);
+        }
+
+        @Override
+        public void dustBlock(int x, int y, int z, int power) {
+            store.stage(x, y, z, power);
+        }
+
+        @Override
+        public void transparentBlock(int x, int y, int z, String blockID) {
+            transparent.add(x, y, z);
+        }
+
+        @Override
+        public void blockingBlock(int x, int y, int z, String blockID) {
+            blocking.add(x, y, z);
+        }
+    }
+
+    /**
+     * Lays out the staged dusts, then stores each one's upstream edges (dusts in
+     * DUST_OFFSETS order, then sources in source order, as in {@link #wire}) and
+     * its ordered update targets. Closes the store if anything fails.
+     */
+    private static OffHeapNodeStore wireOffHeap(OffHeapAssembly assembly) throws IOException {
+        OffHeapNodeStore store = assembly.store;
+        try {
+            if (assembly.sources.isEmpty()) {
+                throw new IllegalArgumentException("Circuit has no powerSource");
+            }
+            store.layout(assembly.sources);
+
+            // Source edges by dust id, in source order
+            Map<Integer, List<Integer>> sourceEdges = new HashMap<>();
+            for (int s = 0; s < assembly.sources.size(); s++) {
+                PowerSourceSpec spec = assembly.sources.get(s);
+                for (int dir = 0; dir < SOURCE_OFFSETS.length; dir++) {
+                    if (!spec.powerMask()[dir]) continue;
+                    int[] so = SOURCE_OFFSETS[dir];
+                    int id = store.indexOf(spec.x() + so[0], spec.y() + so[1], spec.z() + so[2]);
+                    if (id >= 0) {
+                        sourceEdges.computeIfAbsent(id, k -> new ArrayList<>()).add(store.size() + s);
+                    }
+                }
+            }
+
+            int[] powerTargets = new int[DUST_OFFSETS.length];
+            int[] updateTargets = new int[UpdateOrderCalculator.SLOTS];
+            for (int id = 0; id < store.size(); id++) {
+                int x = store.x(id);
+                int y = store.y(id);
+                int z = store.z(id);
+                int count = 0;
+                for (int[] off : DUST_OFFSETS) {
+                    int b = store.indexOf(x + off[0], y + off[1], z + off[2]);
+                    if (b >= 0 && isAffectedBy(x, y, z, x + off[0], y + off[1], z + off[2],
+                            assembly.blocking, assembly.transparent)) {
+                        powerTargets[count++] = b;
+                    }
+                }
+                List<Integer> sources = sourceEdges.get(id);
+                if (sources != null) {
+                    if (powerTargets.length < count + sources.size()) {
+                        powerTargets = Arrays.copyOf(powerTargets, count + sources.size());
+                    }
+                    for (int source : sources) {
+                        powerTargets[count++] = source;
+                    }
+                }
+                int updateCount = UpdateOrderCalculator.orderIds(x, y, z, store, false, updateTargets);
+                store.appendEdges(id, powerTargets, count, updateTargets, updateCount);
+            }
+            return store;
+        } catch (IOException | RuntimeException e) {
+            discard(store, e);
+            throw e;
+        }
+    }
 
-        // 3) Wire dust-dust powerTargets
-        for (DustBlock a : map.values()) {
-            for (int[] off : DUST_OFFSETS) {
-                String k = key(a.getX() + off[0], a.getY() + off[1], a.getZ() + off[2]);
-                DustBlock b = map.get(k);
-                if (b != null && isAffectedBy(a, b, instance.blockingBlocks(), instance.transparentBlocks())) {
-                    a.addPowerTarget(b);
+    /** Closes a store whose build failed with {@code failure}, keeping any close error as suppressed. */
+    private static void discard(OffHeapNodeStore store, Exception failure) {
+        try {
+            store.close();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    List<DustBlock> wire(Assembly assembly) {
+        SpatialIndex index = assembly.index;
+        if (assembly.sources.isEmpty()) {
+            throw new IllegalArgumentException("Circuit has no powerSource");
+        }
+
+        // 1) Instantiate one PowerSourceBlock per source, in source order
+        List<PowerSourceBlock> sources = assembly.sourceBlocks;
+        for (PowerSourceSpec spec : assembly.sources) {
+            sources.add(new PowerSourceBlock(spec));
+        }
+
+        // 2) Assign node ids (DustBlocks were registered while reading the input)
+        if (order == NodeOrder.MORTON) {
+            List<DustBlock> sorted = new ArrayList<>(index.blocks());
+            sorted.sort(NodeOrder.MORTON_COMPARATOR);
+            index.clear();
+            sorted.forEach(index::put);
+        }
+
+        // 3) Wire dust-dust powerTargets, checking obstacles in the indexed sets
+        PositionSet blocking = assembly.blocking;
+        PositionSet transparent = assembly.transparent;
+        BlockRangeTask.forEach(pool, index.size(), id -> wireDust(index.get(id), index, blocking, transparent));
+
+        // 4) Wire source-dust powerTargets based on each source's mask
+        for (PowerSourceBlock source : sources) {
+            boolean[] mask = source.getPowerMask();
+            for (int dir = 0; dir < SOURCE_OFFSETS.length; dir++) {
+                if (!mask[dir]) continue;
+                int[] so = SOURCE_OFFSETS[dir];
+                DustBlock db = index.get(source.getX() + so[0], source.getY() + so[1], source.getZ() + so[2]);
+                if (db != null) {
+                    db.addPowerTarget(source);
                 }
             }
         }
 
-        // 4) Wire source-dust powerTargets based on mask
-        boolean[] mask = instance.powerSource().powerMask();
-        for (int dir = 0; dir < SOURCE_OFFSETS.length; dir++) {
-            if (!mask[dir]) continue;
-            int[] so = SOURCE_OFFSETS[dir];
-            String k = key(source.getX() + so[0], source.getY() + so[1], source.getZ() + so[2]);
-            DustBlock db = map.get(k);
-            if (db != null) {
-                db.addPowerTarget(source);
+        return new ArrayList<>(index.blocks());
+    }
+
+    /**
+     * Appends the dust-dust powerTargets of {@code a}, in DUST_OFFSETS order.
+     */
+    static void wireDust(DustBlock a, SpatialIndex index, PositionSet blocking, PositionSet transparent) {
+        for (int[] off : DUST_OFFSETS) {
+            DustBlock b = index.get(a.getX() + off[0], a.getY() + off[1], a.getZ() + off[2]);
+            if (b != null && isAffectedBy(a, b, blocking, transparent)) {
+                a.addPowerTarget(b);
             }
         }
+    }
 
-        return new ArrayList<>(map.values());
+    /**
+     * Appends every source whose mask points at {@code a}, in source order;
+     * the same edges the full build adds in step 4.
+     */
+    static void wireSources(DustBlock a, List<PowerSourceBlock> sources) {
+        for (PowerSourceBlock source : sources) {
+            boolean[] mask = source.getPowerMask();
+            for (int dir = 0; dir < SOURCE_OFFSETS.length; dir++) {
+                if (!mask[dir]) continue;
+                int[] so = SOURCE_OFFSETS[dir];
+                if (source.getX() + so[0] == a.getX() && source.getY() + so[1] == a.getY()
+                        && source.getZ() + so[2] == a.getZ()) {
+                    a.addPowerTarget(source);
+                }
+            }
+        }
     }
 
     /**
      * Connectivity checks for dust-dust: horizontal, staircase, blocking, transparency
      */
     private static boolean isAffectedBy(DustBlock A, DustBlock B,
-                                        List<BlockingBlockSpec> blocking,
-                                        List<TransparentBlockSpec> transparent) {
-        int dx = B.getX() - A.getX();
-        int dy = B.getY() - A.getY();
-        int dz = B.getZ() - A.getZ();
+                                        PositionSet blocking,
+                                        PositionSet transparent) {
+        return isAffectedBy(A.getX(), A.getY(), A.getZ(), B.getX(), B.getY(), B.getZ(), blocking, transparent);
+    }
+
+    /**
+     * Same check on the positions of dust A (ax,ay,az) and dust B (bx,by,bz).
+     */
+    private static boolean isAffectedBy(int ax, int ay, int az, int bx, int by, int bz,
+                                        PositionSet blocking,
+                                        PositionSet transparent) {
+        int dx = bx - ax;
+        int dy = by - ay;
+        int dz = bz - az;
         // Horizontal
         if (dy == 0 && Math.abs(dx) + Math.abs(dz) == 1) return true;
         // Staircase
         if (Math.abs(dy) == 1 && Math.abs(dx) + Math.abs(dz) == 1) {
             // Check blocking-cap
-            DustBlock lower = A.getY() < B.getY() ? A : B;
-            String capKey = key(lower.getX(), lower.getY() + 1, lower.getZ());
-            if (blocking.stream().anyMatch(b -> key(b.x(), b.y(), b.z()).equals(capKey))) {
+            boolean aLower = ay < by;
+            if (aLower ? blocking.contains(ax, ay + 1, az) : blocking.contains(bx, by + 1, bz)) {
                 return false;
             }
             // Check transparent staircase
-            DustBlock higher = (lower == A ? B : A);
-            String transKey = key(higher.getX(), higher.getY() - 1, higher.getZ());
-            if (transparent.stream().anyMatch(t -> key(t.x(), t.y(), t.z()).equals(transKey))) {
-                return A != lower;
+            if (aLower ? transparent.contains(bx, by - 1, bz) : transparent.contains(ax, ay - 1, az)) {
+                return !aLower;
             }
             // default
             return true;
         }
         return false;
     }
-
-    private static String key(int x, int y, int z) {
-        return x + ":" + y + ":" + z;
-    }
 }
\ No newline at end of file
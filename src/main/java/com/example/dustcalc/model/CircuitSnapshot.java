@@ -0,0 +1,219 @@
+package com.example.dustcalc.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Binary snapshot of a CompiledCircuit, so a wired and ordered graph can be
+ * reloaded without parsing, building or ordering. Layout (big-endian):
+ * <pre>
+ *   int     magic "DCCS"
+ *   int     format version
+ *   int     builder version   {@link CircuitGraphBuilder#VERSION} at write time
+ *   32 byte key              caller-chosen, e.g. a SHA-256 of the input
+ *   int nodeCount, int sourceCount, int powerEdgeCount, int updateEdgeCount, int triggerEdgeCount
+ *   int[nodeCount + sourceCount] × 3                  x, y, z
+ *   int[nodeCount + 1] powerOffsets,  int[powerEdgeCount] powerEdges
+ *   int[nodeCount + 1] updateOffsets, int[updateEdgeCount] updateEdges
+ *   int[sourceCount + 1] triggerOffsets, int[triggerEdgeCount] triggerEdges
+ *   byte[nodeCount + sourceCount] initialPowers
+ *   byte[sourceCount] sourcePowers
+ * </pre>
+ * Reading memory-maps the file section by section and bulk-copies each array,
+ * then checks that every offset array is monotonic and ends at its edge count,
+ * every edge names an existing node and every power is a level, so a damaged
+ * file is rejected instead of failing later inside a tracer.
+ */
+public final class CircuitSnapshot {
+    private static final int MAGIC = 0x44434353;
+    private static final int VERSION = 2;
+    public static final int KEY_BYTES = 32;
+    private static final int HEADER_BYTES = 12 + KEY_BYTES + 20;
+    private static final int BUFFER_BYTES = 1 << 16;
+    // Ints mapped per slice, so no single mapping exceeds 1 GiB
+    private static final int SLICE_INTS = 1 << 28;
+
+    private CircuitSnapshot() {}
+
+    /**
+     * Writes {@code circuit} to {@code path}, replacing any existing file.
+     * @param key {@link #KEY_BYTES} bytes identifying what the circuit was built from
+     */
+    public static void write(CompiledCircuit circuit, byte[] key, Path path) throws IOException {
+        checkKey(key);
+        int n = circuit.nodeCount();
+        int total = n + circuit.sourceCount();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(CircuitGraphBuilder.VERSION).put(key);
+            buffer.putInt(n).putInt(circuit.sourceCount())
+                    .putInt(circuit.powerEdges().length)
+                    .putInt(circuit.updateEdges().length)
+                    .putInt(circuit.triggerEdges().length);
+            int[] coords = new int[total];
+            for (int axis = 0; axis < 3; axis++) {
+                for (int id = 0; id < total; id++) {
+                    coords[id] = axis == 0 ? circuit.x(id) : axis == 1 ? circuit.y(id) : circuit.z(id);
+                }
+                writeInts(channel, buffer, coords);
+            }
+            writeInts(channel, buffer, circuit.powerOffsets());
+            writeInts(channel, buffer, circuit.powerEdges());
+            writeInts(channel, buffer, circuit.updateOffsets());
+            writeInts(channel, buffer, circuit.updateEdges());
+            writeInts(channel, buffer, circuit.triggerOffsets());
+            writeInts(channel, buffer, circuit.triggerEdges());
+            writeBytes(channel, buffer, circuit.initialPowers());
+            byte[] sourcePowers = new byte[circuit.sourceCount()];
+            for (int s = 0; s < sourcePowers.length; s++) {
+                sourcePowers[s] = (byte) circuit.sourcePower(s);
+            }
+            writeBytes(channel, buffer, sourcePowers);
+            drain(channel, buffer);
+        }
+    }
+
+    /**
+     * Loads a snapshot written by {@link #write}.
+     * @return the circuit, or null if the file was written for another key,
+     *         format version or builder version
+     * @throws IOException if the file cannot be read, is truncated or is inconsistent
+     */
+    public static CompiledCircuit read(Path path, byte[] key) throws IOException {
+        checkKey(key);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Snapshot too short: " + path);
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a circuit snapshot: " + path);
+            }
+            int version = header.getInt();
+            int builderVersion = header.getInt();
+            byte[] storedKey = new byte[KEY_BYTES];
+            header.get(storedKey);
+            if (version != VERSION || builderVersion != CircuitGraphBuilder.VERSION || !Arrays.equals(storedKey, key)) {
+                return null;
+            }
+            int n = header.getInt();
+            int sources = header.getInt();
+            int powerEdgeCount = header.getInt();
+            int updateEdgeCount = header.getInt();
+            int triggerEdgeCount = header.getInt();
+            if (n < 0 || sources < 0 || powerEdgeCount < 0 || updateEdgeCount < 0 || triggerEdgeCount < 0
+                    || (long) n + sources >= Integer.MAX_VALUE) {
+                throw new IOException("Snapshot header has invalid counts: " + path);
+            }
+            int total = n + sources;
+
+            long expected = HEADER_BYTES + 4L * (3L * total + (n + 1) + powerEdgeCount + (n + 1)
+                    + updateEdgeCount + (sources + 1) + triggerEdgeCount) + total + sources;
+            if (channel.size() != expected) {
+                throw new IOException("Snapshot size " + channel.size() + " does not match its header: " + path);
+            }
+            long[] pos = {HEADER_BYTES};
+            int[] xs = readInts(channel, pos, total);
+            int[] ys = readInts(channel, pos, total);
+            int[] zs = readInts(channel, pos, total);
+            int[] powerOffsets = readInts(channel, pos, n + 1);
+            int[] powerEdges = readInts(channel, pos, powerEdgeCount);
+            int[] updateOffsets = readInts(channel, pos, n + 1);
+            int[] updateEdges = readInts(channel, pos, updateEdgeCount);
+            int[] triggerOffsets = readInts(channel, pos, sources + 1);
+            int[] triggerEdges = readInts(channel, pos, triggerEdgeCount);
+            byte[] powers = new byte[total];
+            channel.map(FileChannel.MapMode.READ_ONLY, pos[0], total).get(powers);
+            byte[] sourcePowers = new byte[sources];
+            channel.map(FileChannel.MapMode.READ_ONLY, pos[0] + total, sources).get(sourcePowers);
+
+            // Power edges reach dusts and sources; update and trigger edges only dusts
+            checkEdges(powerOffsets, powerEdges, total, "power", path);
+            checkEdges(updateOffsets, updateEdges, n, "update", path);
+            checkEdges(triggerOffsets, triggerEdges, n, "trigger", path);
+            checkLevels(powers, path);
+            checkLevels(sourcePowers, path);
+            return new CompiledCircuit(n, xs, ys, zs, powerOffsets, powerEdges, updateOffsets, updateEdges,
+                    triggerOffsets, triggerEdges, powers, sourcePowers);
+        }
+    }
+
+    /**
+     * Checks that {@code offsets} starts at 0, never decreases and ends at the
+     * edge count, and that every edge is a node id below {@code limit}.
+     */
+    private static void checkEdges(int[] offsets, int[] edges, int limit, String kind, Path path) throws IOException {
+        if (offsets[0] != 0 || offsets[offsets.length - 1] != edges.length) {
+            throw new IOException("Snapshot " + kind + " offsets do not span its edges: " + path);
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] < offsets[i - 1]) {
+                throw new IOException("Snapshot " + kind + " offsets are not monotonic: " + path);
+            }
+        }
+        for (int id : edges) {
+            if (id < 0 || id >= limit) {
+                throw new IOException("Snapshot " + kind + " edge out of range: " + path);
+            }
+        }
+    }
+
+    private static void checkLevels(byte[] levels, Path path) throws IOException {
+        for (byte level : levels) {
+            if (level < 0 || level > 15) {
+                throw new IOException("Snapshot has a power level out of range: " + path);
+            }
+        }
+    }
+
+    private static void checkKey(byte[] key) {
+        if (key.length != KEY_BYTES) {
+            throw new IllegalArgumentException("Snapshot key must be " + KEY_BYTES + " bytes");
+        }
+    }
+
+    private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] values) throws IOException {
+        int from = 0;
+        while (from < values.length) {
+            if (buffer.remaining() < 4) drain(channel, buffer);
+            int len = Math.min(buffer.remaining() / 4, values.length - from);
+            buffer.asIntBuffer().put(values, from, len);
+            buffer.position(buffer.position() + len * 4);
+            from += len;
+        }
+    }
+
+    private static void writeBytes(FileChannel channel, ByteBuffer buffer, byte[] values) throws IOException {
+        for (int from = 0; from < values.length; from += BUFFER_BYTES) {
+            int len = Math.min(BUFFER_BYTES, values.length - from);
+            if (buffer.remaining() < len) drain(channel, buffer);
+            buffer.put(values, from, len);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static int[] readInts(FileChannel channel, long[] pos, int count) throws IOException {
+        int[] values = new int[count];
+        for (int from = 0; from < count; from += SLICE_INTS) {
+            int len = Math.min(SLICE_INTS, count - from);
+            IntBuffer ints = channel.map(FileChannel.MapMode.READ_ONLY, pos[0], 4L * len).asIntBuffer();
+            ints.get(values, from, len);
+            pos[0] += 4L * len;
+        }
+        return values;
+    }
+}
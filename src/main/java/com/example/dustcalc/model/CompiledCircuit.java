@@ -0,0 +1,240 @@
+package com.example.dustcalc.model;
+
+import com.example.dustcalc.input.PowerSourceSpec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Frozen, array-based form of a wired and ordered dust graph.
+ * Node ids 0..nodeCount-1 are the SpatialIndex ids of the dusts; power sources
+ * follow as ids nodeCount..nodeCount+sourceCount-1. Upstream power edges and
+ * ordered update edges are stored in CSR form (an offsets array of length
+ * nodeCount+1 into a flat edge array), and initial power levels in a byte[].
+ * Sources start switched off, at power 0; the level each one switches on to is
+ * kept apart, for CompiledTracer#toggle.
+ * The power edges are also kept reversed: for every dust and source, the dusts
+ * that take power from it.
+ * Instances are immutable; simulation state lives in the tracers that run on them.
+ */
+public final class CompiledCircuit {
+    // Order of source offsets: WEST, EAST, DOWN, UP, NORTH, SOUTH
+    private static final int[][] SOURCE_OFFSETS = PowerSourceBlock.getSourceOffsets();
+
+    private final int nodeCount;
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] zs;
+    private final int[] powerOffsets;
+    private final int[] powerEdges;
+    private final int[] updateOffsets;
+    private final int[] updateEdges;
+    private final int[] triggerOffsets;
+    private final int[] triggerEdges;
+    private final byte[] initialPowers;
+    private final byte[] sourcePowers;
+    private final int[] downOffsets;
+    private final int[] downEdges;
+
+    CompiledCircuit(int nodeCount, int[] xs, int[] ys, int[] zs,
+                            int[] powerOffsets, int[] powerEdges,
+                            int[] updateOffsets, int[] updateEdges,
+                            int[] triggerOffsets, int[] triggerEdges,
+                            byte[] initialPowers, byte[] sourcePowers) {
+        this.nodeCount = nodeCount;
+        this.xs = xs;
+        this.ys = ys;
+        this.zs = zs;
+        this.powerOffsets = powerOffsets;
+        this.powerEdges = powerEdges;
+        this.updateOffsets = updateOffsets;
+        this.updateEdges = updateEdges;
+        this.triggerOffsets = triggerOffsets;
+        this.triggerEdges = triggerEdges;
+        this.initialPowers = initialPowers;
+        this.sourcePowers = sourcePowers;
+
+        // Reverse the power edges with a counting sort over their upstream ends
+        int total = initialPowers.length;
+        int[] downOffsets = new int[total + 1];
+        for (int e = 0; e < powerOffsets[nodeCount]; e++) {
+            downOffsets[powerEdges[e] + 1]++;
+        }
+        for (int u = 0; u < total; u++) {
+            downOffsets[u + 1] += downOffsets[u];
+        }
+        int[] downEdges = new int[powerOffsets[nodeCount]];
+        int[] fill = Arrays.copyOf(downOffsets, total);
+        for (int d = 0; d < nodeCount; d++) {
+            for (int e = powerOffsets[d]; e < powerOffsets[d + 1]; e++) {
+                downEdges[fill[powerEdges[e]]++] = d;
+            }
+        }
+        this.downOffsets = downOffsets;
+        this.downEdges = downEdges;
+    }
+
+    /**
+     * Compiles the graph held by {@code index} after CircuitGraphBuilder and
+     * UpdateOrderCalculator have run. Current dust powers become the initial powers.
+     * Sources are numbered in order of first appearance among the nodes' powerTargets;
+     * sources that power no dust are not part of the result.
+     */
+    public static CompiledCircuit compile(SpatialIndex index) {
+        Map<PowerSourceSpec, Boolean> seen = new IdentityHashMap<>();
+        List<PowerSourceSpec> specs = new ArrayList<>();
+        for (DustBlock b : index.blocks()) {
+            for (PowerBlock up : b.getPowerTargets()) {
+                if (up instanceof PowerSourceBlock src && seen.put(src.getSpec(), Boolean.TRUE) == null) {
+                    specs.add(src.getSpec());
+                }
+            }
+        }
+        return compile(index, specs);
+    }
+
+    /**
+     * Compiles the graph with source {@code s} taken from {@code specs.get(s)}, so
+     * source indices follow the instance's source order. Sources that power no
+     * dust still get an index (and trigger nothing).
+     * @throws IllegalArgumentException if the graph holds a source built from a spec not in {@code specs}
+     */
+    public static CompiledCircuit compile(SpatialIndex index, List<PowerSourceSpec> specs) {
+        int n = index.size();
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        int[] zs = new int[n];
+        int[] powerOffsets = new int[n + 1];
+        int[] updateOffsets = new int[n + 1];
+        Map<PowerSourceSpec, Integer> sourceIds = new IdentityHashMap<>();
+        List<PowerSourceBlock> sources = new ArrayList<>(specs.size());
+        for (PowerSourceSpec spec : specs) {
+            sourceIds.putIfAbsent(spec, n + sources.size());
+            sources.add(new PowerSourceBlock(spec));
+        }
+        for (int id = 0; id < n; id++) {
+            DustBlock b = index.get(id);
+            xs[id] = b.getX();
+            ys[id] = b.getY();
+            zs[id] = b.getZ();
+            powerOffsets[id + 1] = powerOffsets[id] + b.getPowerTargets().size();
+            updateOffsets[id + 1] = updateOffsets[id] + b.updateTargetCount();
+        }
+
+        int[] powerEdges = new int[powerOffsets[n]];
+        int[] updateEdges = new int[updateOffsets[n]];
+        for (int id = 0; id < n; id++) {
+            DustBlock b = index.get(id);
+            int e = powerOffsets[id];
+            for (PowerBlock up : b.getPowerTargets()) {
+                powerEdges[e++] = up instanceof DustBlock d
+                        ? index.indexOf(d.getX(), d.getY(), d.getZ())
+                        : sourceId(sourceIds, (PowerSourceBlock) up);
+            }
+            e = updateOffsets[id];
+            for (int i = 0; i < b.updateTargetCount(); i++) {
+                DustBlock t = b.updateTargetAt(i);
+                updateEdges[e++] = index.indexOf(t.getX(), t.getY(), t.getZ());
+            }
+        }
+
+        // Masked source directions, in WEST, EAST, DOWN, UP, NORTH, SOUTH order
+        xs = Arrays.copyOf(xs, n + sources.size());
+        ys = Arrays.copyOf(ys, n + sources.size());
+        zs = Arrays.copyOf(zs, n + sources.size());
+        int[] triggerOffsets = new int[sources.size() + 1];
+        int[] triggerEdges = new int[sources.size() * SOURCE_OFFSETS.length];
+        byte[] powers = new byte[n + sources.size()];
+        byte[] sourcePowers = new byte[sources.size()];
+        for (int id = 0; id < n; id++) {
+            powers[id] = (byte) index.get(id).getPower();
+        }
+        for (int s = 0; s < sources.size(); s++) {
+            PowerSourceBlock src = sources.get(s);
+            xs[n + s] = src.getX();
+            ys[n + s] = src.getY();
+            zs[n + s] = src.getZ();
+            // Off until toggled, so each source's switch-on propagates from its own trace
+            sourcePowers[s] = (byte) src.getPower();
+            boolean[] mask = src.getPowerMask();
+            int e = triggerOffsets[s];
+            for (int dir = 0; dir < SOURCE_OFFSETS.length; dir++) {
+                if (!mask[dir]) continue;
+                int[] off = SOURCE_OFFSETS[dir];
+                int target = index.indexOf(src.getX() + off[0], src.getY() + off[1], src.getZ() + off[2]);
+                if (target >= 0) {
+                    triggerEdges[e++] = target;
+                }
+            }
+            triggerOffsets[s + 1] = e;
+        }
+
+        return new CompiledCircuit(n, xs, ys, zs, powerOffsets, powerEdges, updateOffsets, updateEdges,
+                triggerOffsets, Arrays.copyOf(triggerEdges, triggerOffsets[sources.size()]), powers, sourcePowers);
+    }
+
+    private static int sourceId(Map<PowerSourceSpec, Integer> sourceIds, PowerSourceBlock src) {
+        Integer id = sourceIds.get(src.getSpec());
+        if (id == null) {
+            throw new IllegalArgumentException("Graph has a power source that is not in the source list: "
+                    + src.getX() + "," + src.getY() + "," + src.getZ());
+        }
+        return id;
+    }
+
+    /** @return number of dust nodes */
+    public int nodeCount() { return nodeCount; }
+
+    /** @return number of power sources; source {@code s} has node id {@code nodeCount() + s} */
+    public int sourceCount() { return initialPowers.length - nodeCount; }
+
+    // Position getters, for dusts and sources alike
+    public int x(int id) { return xs[id]; }
+    public int y(int id) { return ys[id]; }
+    public int z(int id) { return zs[id]; }
+
+    /**
+     * @return the source index whose block sits at (x,y,z), or -1 if there is none
+     */
+    public int sourceAt(int x, int y, int z) {
+        for (int s = 0; s < sourceCount(); s++) {
+            int id = nodeCount + s;
+            if (xs[id] == x && ys[id] == y && zs[id] == z) return s;
+        }
+        return -1;
+    }
+
+    /** @return number of upstream nodes (dusts or sources) powering dust {@code id} */
+    public int powerTargetCount(int id) { return powerOffsets[id + 1] - powerOffsets[id]; }
+
+    /** @return the node id of the {@code i}-th upstream node of dust {@code id}, in powerTargets order */
+    public int powerTarget(int id, int i) { return powerEdges[powerOffsets[id] + i]; }
+
+    /** @return number of ordered update edges of dust {@code id} */
+    public int updateTargetCount(int id) { return updateOffsets[id + 1] - updateOffsets[id]; }
+
+    /** @return the dust prompted by the {@code i}-th update edge of dust {@code id} */
+    public int updateTarget(int id, int i) { return updateEdges[updateOffsets[id] + i]; }
+
+    /** @return a copy of the initial power levels, dusts followed by sources (which start at 0) */
+    public byte[] initialPowers() {
+        return initialPowers.clone();
+    }
+
+    /** @return the level source {@code s} switches on to, its spec's final power */
+    public int sourcePower(int s) { return sourcePowers[s]; }
+
+    // CSR accessors; edge arrays are shared, callers must not modify them
+    int[] powerOffsets() { return powerOffsets; }
+    int[] powerEdges() { return powerEdges; }
+    int[] updateOffsets() { return updateOffsets; }
+    int[] updateEdges() { return updateEdges; }
+    int[] triggerOffsets() { return triggerOffsets; }
+    int[] triggerEdges() { return triggerEdges; }
+    // Reverse power edges over dusts and sources (length nodeCount+sourceCount+1 offsets)
+    int[] downOffsets() { return downOffsets; }
+    int[] downEdges() { return downEdges; }
+}
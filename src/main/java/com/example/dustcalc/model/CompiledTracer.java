@@ -0,0 +1,312 @@
+package com.example.dustcalc.model;
+
+import com.example.dustcalc.input.PowerSourceSpec;
+import com.example.dustcalc.metrics.PropagationMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the UpdateTracer propagation rules directly on a CompiledCircuit.
+ * Power levels live in a byte[] owned by this tracer, and the downstream
+ * prompts walk flat CSR arrays, so a visit touches no objects.
+ * <p>
+ * Each dust also keeps, per power level, how many of its upstream nodes hold
+ * that level, plus a 16-bit mask of the levels with a non-zero count. The
+ * upstream max is then the highest set bit, so a prompt costs O(1) however
+ * many powerTargets the dust has; when a node's power changes, the counters of
+ * the dusts it powers are moved from the old level to the new one.
+ * Emits the same trace as UpdateTracer on the graph it was compiled from.
+ * <p>
+ * With a LazyUpdateOrder, the update edges compiled into the circuit are ignored
+ * and each node's targets are computed when propagation first reaches it, so a
+ * circuit compiled from an unordered graph can be traced right away.
+ */
+public class CompiledTracer {
+    private static final int LEVELS = 16;
+
+    private final CompiledCircuit circuit;
+    private final int[] powerOffsets;
+    private final int[] powerEdges;
+    private final int[] updateOffsets;
+    private final int[] updateEdges;
+    private final byte[] power;
+    private final byte[] snapshot; // initial powers, restored by reset()
+    private final int[] downOffsets;
+    private final int[] downEdges;
+    // Per dust: count of upstream nodes at each level (16 per dust), and the mask of non-zero levels
+    private final byte[] levelCounts;
+    private final char[] levelMasks;
+    private final byte[] countsSnapshot;
+    private final char[] masksSnapshot;
+    private String[] labels;
+    private final List<UpdateTracer.TraceEntry> trace = new ArrayList<>();
+    // Counters to fill, or null when metrics are disabled
+    private final PropagationMetrics metrics;
+    // Update targets computed on demand, or null to use the compiled update edges
+    private final LazyUpdateOrder lazyOrder;
+    // Limits for each trace, or null when unlimited
+    private BudgetMeter budget;
+
+    // Work stack frames: node id and position in its update edges
+    private int[] stackNodes = new int[64];
+    private int[] stackCursors = new int[64];
+
+    public CompiledTracer(CompiledCircuit circuit) {
+        this(circuit, null);
+    }
+
+    /**
+     * @param metrics counters to record visits, updates and cascade depth into, or null
+     */
+    public CompiledTracer(CompiledCircuit circuit, PropagationMetrics metrics) {
+        this(circuit, null, metrics);
+    }
+
+    /**
+     * @param lazyOrder update targets to use instead of the compiled ones, or null;
+     *                  built over the index the circuit was compiled from
+     * @param metrics   counters to record visits, updates and cascade depth into, or null
+     */
+    public CompiledTracer(CompiledCircuit circuit, LazyUpdateOrder lazyOrder, PropagationMetrics metrics) {
+        this.circuit = circuit;
+        this.metrics = metrics;
+        this.lazyOrder = lazyOrder;
+        this.powerOffsets = circuit.powerOffsets();
+        this.powerEdges = circuit.powerEdges();
+        this.updateOffsets = circuit.updateOffsets();
+        this.updateEdges = circuit.updateEdges();
+        this.downOffsets = circuit.downOffsets();
+        this.downEdges = circuit.downEdges();
+        this.snapshot = circuit.initialPowers();
+        this.power = snapshot.clone();
+        this.levelCounts = new byte[circuit.nodeCount() * LEVELS];
+        this.levelMasks = new char[circuit.nodeCount()];
+        recount();
+        this.countsSnapshot = levelCounts.clone();
+        this.masksSnapshot = levelMasks.clone();
+    }
+
+    /**
+     * Runs a full trace for the compiled source at the spec's position: switches
+     * it on to the spec's final power and processes each masked direction in
+     * order. A spec that matches no compiled source powers no dust and produces no updates.
+     */
+    public List<UpdateTracer.TraceEntry> traceAll(PowerSourceSpec src) {
+        traceAll(src, new ListTraceSink(trace, this::labelOf));
+        return List.copyOf(trace);
+    }
+
+    /**
+     * Runs a full trace, streaming each update to {@code sink} instead of recording it.
+     */
+    public void traceAll(PowerSourceSpec src, TraceSink sink) {
+        int s = circuit.sourceAt(src.x(), src.y(), src.z());
+        if (s >= 0) {
+            toggle(s, src.finalPower(), sink);
+        }
+    }
+
+    /**
+     * Triggers every masked neighbour of source {@code s} in direction order.
+     */
+    public void trace(int s, TraceSink sink) {
+        if (budget != null) budget.start();
+        int[] triggerOffsets = circuit.triggerOffsets();
+        int[] triggerEdges = circuit.triggerEdges();
+        for (int e = triggerOffsets[s]; e < triggerOffsets[s + 1]; e++) {
+            propagate(triggerEdges[e], sink);
+        }
+    }
+
+    /**
+     * Limits the work of every later trace; when a limit is reached the
+     * trace throws UpdateBudgetExceededException. Null or UNLIMITED removes the limits.
+     */
+    public void setBudget(UpdateBudget budget) {
+        this.budget = budget == null || budget.isUnlimited() ? null : new BudgetMeter(budget, circuit.nodeCount());
+    }
+
+    /**
+     * Sets source {@code s} to {@code level} and triggers its masked neighbours,
+     * as when a lever or button is switched.
+     */
+    public void toggle(int s, int level, TraceSink sink) {
+        if (level < 0 || level > 15) {
+            throw new IllegalArgumentException("Power level out of range: " + level);
+        }
+        setPower(circuit.nodeCount() + s, level);
+        trace(s, sink);
+    }
+
+    /**
+     * Restores every node and source to its initial power. Costs one array copy,
+     * so a single tracer can run many scenarios on the same circuit.
+     */
+    public void reset() {
+        System.arraycopy(snapshot, 0, power, 0, power.length);
+        System.arraycopy(countsSnapshot, 0, levelCounts, 0, levelCounts.length);
+        System.arraycopy(masksSnapshot, 0, levelMasks, 0, levelMasks.length);
+    }
+
+    /**
+     * Replaces the power state with {@code powers}, one level per node id,
+     * dusts followed by sources.
+     */
+    public void reset(byte[] powers) {
+        if (powers.length != power.length) {
+            throw new IllegalArgumentException("Expected " + power.length + " power levels, got " + powers.length);
+        }
+        for (byte level : powers) {
+            checkLevel(level);
+        }
+        System.arraycopy(powers, 0, power, 0, power.length);
+        recount();
+    }
+
+    private void propagate(int root, TraceSink sink) {
+        if (!pullAndRecord(TraceSink.SOURCE, root, sink, 0)) {
+            return;
+        }
+        int top = 0;
+        stackNodes[0] = root;
+        stackCursors[0] = firstTarget(root);
+        if (metrics != null) metrics.depth(1);
+        while (top >= 0) {
+            int curr = stackNodes[top];
+            int cursor = stackCursors[top];
+            int[] targets = targets(curr);
+            if (cursor == endOfTargets(curr, targets)) {
+                top--;
+                continue;
+            }
+            stackCursors[top] = cursor + 1;
+            int nb = targets[cursor];
+            if (pullAndRecord(curr, nb, sink, top + 1)) {
+                if (++top == stackNodes.length) {
+                    stackNodes = Arrays.copyOf(stackNodes, top * 2);
+                    stackCursors = Arrays.copyOf(stackCursors, top * 2);
+                }
+                stackNodes[top] = nb;
+                stackCursors[top] = firstTarget(nb);
+                if (metrics != null) metrics.depth(top + 1);
+            }
+        }
+    }
+
+    /**
+     * @return the array holding the update targets of node {@code id}, from
+     *         firstTarget(id) to endOfTargets(id, array): the compiled update
+     *         edges, or its lazily computed list. Frame cursors index this array;
+     *         it is fetched again on every step, since a bounded cache may have
+     *         evicted the list in the meantime.
+     */
+    private int[] targets(int id) {
+        return lazyOrder != null ? lazyOrder.targetsOf(id) : updateEdges;
+    }
+
+    private int firstTarget(int id) {
+        return lazyOrder != null ? 0 : updateOffsets[id];
+    }
+
+    private int endOfTargets(int id, int[] targets) {
+        return lazyOrder != null ? targets.length : updateOffsets[id + 1];
+    }
+
+    /**
+     * @param depth number of work stack frames above the node, for the budget report
+     */
+    private boolean pullAndRecord(int fromId, int id, TraceSink sink, int depth) {
+        if (budget != null) budget.visit(id, stackNodes, depth);
+        int mask = levelMasks[id];
+        int max = 31 - Integer.numberOfLeadingZeros(mask); // -1 when there is no upstream
+        int newPower = Math.max(max - 1, 0);
+        if (newPower == power[id]) {
+            if (metrics != null) metrics.redundantVisit();
+            return false;
+        }
+        if (budget != null) budget.update(id, stackNodes, depth);
+        setPower(id, newPower);
+        if (metrics != null) metrics.update(fanOut(id));
+        sink.update(fromId, id, newPower);
+        return true;
+    }
+
+    private int fanOut(int id) {
+        return endOfTargets(id, targets(id)) - firstTarget(id);
+    }
+
+    /** Sets the power of node {@code id} and moves it between levels in its downstream counters. */
+    private void setPower(int id, int level) {
+        int old = power[id];
+        power[id] = (byte) level;
+        for (int e = downOffsets[id]; e < downOffsets[id + 1]; e++) {
+            int d = downEdges[e];
+            if (--levelCounts[d * LEVELS + old] == 0) {
+                levelMasks[d] &= (char) ~(1 << old);
+            }
+            if (levelCounts[d * LEVELS + level]++ == 0) {
+                levelMasks[d] |= (char) (1 << level);
+            }
+        }
+    }
+
+    /** Rebuilds every dust's level counters from the current powers. */
+    private void recount() {
+        Arrays.fill(levelCounts, (byte) 0);
+        Arrays.fill(levelMasks, (char) 0);
+        for (int d = 0; d < circuit.nodeCount(); d++) {
+            for (int e = powerOffsets[d]; e < powerOffsets[d + 1]; e++) {
+                int level = checkLevel(power[powerEdges[e]]);
+                levelCounts[d * LEVELS + level]++;
+                levelMasks[d] |= (char) (1 << level);
+            }
+        }
+    }
+
+    private static int checkLevel(int level) {
+        if (level < 0 || level >= LEVELS) {
+            throw new IllegalArgumentException("Power level out of range: " + level);
+        }
+        return level;
+    }
+
+    /**
+     * @return the "x:y:z" label of node {@code id}
+     */
+    public String labelOf(int id) {
+        if (labels == null) {
+            labels = new String[circuit.nodeCount()];
+        }
+        String l = labels[id];
+        if (l == null) {
+            l = labels[id] = circuit.x(id) + ":" + circuit.y(id) + ":" + circuit.z(id);
+        }
+        return l;
+    }
+
+    /** @return the current power of node {@code id} */
+    public int getPower(int id) {
+        return power[id];
+    }
+
+    /**
+     * Returns an immutable copy of the trace log.
+     */
+    public List<UpdateTracer.TraceEntry> getTrace() {
+        return List.copyOf(trace);
+    }
+
+    /**
+     * Returns the initial dust powers, in node id order.
+     */
+    public int[] getInitialPowers() {
+        int[] powers = new int[circuit.nodeCount()];
+        byte[] initial = snapshot;
+        for (int i = 0; i < powers.length; i++) {
+            powers[i] = initial[i];
+        }
+        return powers;
+    }
+}
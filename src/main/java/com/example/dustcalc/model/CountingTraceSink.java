@@ -0,0 +1,18 @@
+package com.example.dustcalc.model;
+
+/**
+ * A TraceSink that only counts updates.
+ */
+public class CountingTraceSink implements TraceSink {
+    private long count;
+
+    @Override
+    public void update(int fromId, int toId, int power) {
+        count++;
+    }
+
+    /** @return number of updates received */
+    public long getCount() {
+        return count;
+    }
+}
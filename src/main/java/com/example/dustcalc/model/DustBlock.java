@@ -14,6 +14,8 @@ import java.util.List;
 public class DustBlock extends PowerBlock {
     private final List<PowerBlock> powerTargets = new ArrayList<>();
     private final List<DustBlock> updateTargets = new ArrayList<>();
+    // Id in the SpatialIndex that last stored this block; checked by the index before use
+    int id = -1;
 
     /**
      * @param x      X-coordinate
@@ -39,6 +41,17 @@ public class DustBlock extends PowerBlock {
         powerTargets.add(upstream);
     }
 
+    /**
+     * @return the highest power among upstream PowerBlocks, or 0 if there are none
+     */
+    int maxUpstreamPower() {
+        int max = 0;
+        for (int i = 0; i < powerTargets.size(); i++) {
+            max = Math.max(max, powerTargets.get(i).getPower());
+        }
+        return max;
+    }
+
     /**
      * Clears all upstream power sources.
      */
@@ -60,6 +73,14 @@ public class DustBlock extends PowerBlock {
         updateTargets.add(downstream);
     }
 
+    int updateTargetCount() {
+        return updateTargets.size();
+    }
+
+    DustBlock updateTargetAt(int i) {
+        return updateTargets.get(i);
+    }
+
     /**
      * Clears all downstream update targets.
      */
@@ -0,0 +1,84 @@
+package com.example.dustcalc.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Update targets computed on demand: a node's ordered update list is built from
+ * the index the first time propagation reaches it, instead of for every dust up
+ * front by UpdateOrderCalculator. Lists are cached per node id, either for the
+ * whole run or, with a bound, in a least-recently-used cache; an evicted list is
+ * simply recomputed, with the same result, on the next visit.
+ * Ids are SpatialIndex ids, so the index must not change while this is in use.
+ * Not thread-safe.
+ */
+public class LazyUpdateOrder {
+    private final SpatialIndex lookup;
+    private final boolean compact;
+    // Unbounded mode: one list per node id; null until first computed
+    private final int[][] lists;
+    // Bounded mode: access-ordered cache, or null when unbounded
+    private final Map<Integer, int[]> lru;
+    private long computed;
+
+    /**
+     * @param lookup  index whose ids the lists refer to
+     * @param compact whether to drop repeated update positions, as in UpdateOrderCalculator
+     */
+    public LazyUpdateOrder(SpatialIndex lookup, boolean compact) {
+        this(lookup, compact, 0);
+    }
+
+    /**
+     * @param maxCached most lists to keep at once, or 0 to keep every computed list
+     */
+    public LazyUpdateOrder(SpatialIndex lookup, boolean compact, int maxCached) {
+        if (maxCached < 0) {
+            throw new IllegalArgumentException("Negative cache size: " + maxCached);
+        }
+        this.lookup = lookup;
+        this.compact = compact;
+        if (maxCached == 0) {
+            this.lists = new int[lookup.size()][];
+            this.lru = null;
+        } else {
+            this.lists = null;
+            this.lru = new LinkedHashMap<>(Math.min(maxCached, 1 << 16), 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+                    return size() > maxCached;
+                }
+            };
+        }
+    }
+
+    /**
+     * @return the ordered update targets of node {@code id}; the array must not be modified
+     */
+    public int[] targetsOf(int id) {
+        if (lists != null) {
+            int[] l = lists[id];
+            if (l == null) {
+                l = lists[id] = compute(id);
+            }
+            return l;
+        }
+        int[] l = lru.get(id);
+        if (l == null) {
+            l = compute(id);
+            lru.put(id, l);
+        }
+        return l;
+    }
+
+    private int[] compute(int id) {
+        computed++;
+        DustBlock b = lookup.get(id);
+        return UpdateOrderCalculator.orderIds(b.getX(), b.getY(), b.getZ(), lookup, compact);
+    }
+
+    /** @return how many lists have been computed, counting recomputations after eviction */
+    public long getComputedCount() {
+        return computed;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.dustcalc.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * A TraceSink that materialises every update as a TraceEntry,
+ * labelling nodes with the given function and the source as "SOURCE".
+ */
+public class ListTraceSink implements TraceSink {
+    private final List<UpdateTracer.TraceEntry> entries;
+    private final IntFunction<String> labels;
+
+    /**
+     * @param labels maps a node id to its label, e.g. {@link CompiledTracer#labelOf}
+     */
+    public ListTraceSink(IntFunction<String> labels) {
+        this(new ArrayList<>(), labels);
+    }
+
+    /**
+     * @param entries list that receives the entries
+     * @param labels  maps a node id to its label
+     */
+    public ListTraceSink(List<UpdateTracer.TraceEntry> entries, IntFunction<String> labels) {
+        this.entries = entries;
+        this.labels = labels;
+    }
+
+    @Override
+    public void update(int fromId, int toId, int power) {
+        String from = fromId == SOURCE ? "SOURCE" : labels.apply(fromId);
+        entries.add(new UpdateTracer.TraceEntry(from, labels.apply(toId), power));
+    }
+
+    /** @return the recorded entries, in trace order */
+    public List<UpdateTracer.TraceEntry> getEntries() {
+        return entries;
+    }
+}
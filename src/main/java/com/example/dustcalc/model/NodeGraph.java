@@ -0,0 +1,35 @@
+package com.example.dustcalc.model;
+
+/**
+ * Access to the dusts of a wired and ordered circuit by dense node id
+ * (0..size-1), independent of how they are stored. SpatialIndex serves the
+ * DustBlock object graph through it, and OffHeapNodeStore a graph kept
+ * outside the Java heap; UpdateTracer runs on either.
+ */
+public interface NodeGraph {
+
+    /** @return number of dusts */
+    int size();
+
+    /** @return the id of the dust at (x,y,z), or -1 if there is none */
+    int indexOf(int x, int y, int z);
+
+    int x(int id);
+
+    int y(int id);
+
+    int z(int id);
+
+    /** @return the current power of dust {@code id} */
+    int power(int id);
+
+    void setPower(int id, int power);
+
+    /** @return the highest power among the upstream nodes of dust {@code id}, or 0 if there are none */
+    int maxUpstreamPower(int id);
+
+    int updateTargetCount(int id);
+
+    /** @return the id of the {@code i}-th dust that dust {@code id} prompts when its power changes */
+    int updateTarget(int id, int i);
+}
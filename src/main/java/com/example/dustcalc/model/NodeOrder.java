@@ -0,0 +1,45 @@
+package com.example.dustcalc.model;
+
+import java.util.Comparator;
+
+/**
+ * Order in which CircuitGraphBuilder assigns node ids. Both orders depend only
+ * on the input, so ids (and everything keyed by them) are stable across runs.
+ */
+public enum NodeOrder {
+    /** Order of first appearance in the input's dust list. */
+    INPUT,
+    /**
+     * Morton (Z-order) by coordinate, independent of input order. Blocks that are
+     * close in space get close ids, which keeps neighbour data close in memory.
+     */
+    MORTON;
+
+    // Bias that maps the covered coordinate range [-2^20, 2^20) onto 21 unsigned bits
+    private static final int BIAS = 1 << 20;
+
+    /** Morton order, ties (coordinates outside the 21-bit range) broken by x, y, z. */
+    static final Comparator<DustBlock> MORTON_COMPARATOR = Comparator
+            .comparingLong((DustBlock b) -> mortonKey(b.getX(), b.getY(), b.getZ()))
+            .thenComparingInt(DustBlock::getX)
+            .thenComparingInt(DustBlock::getY)
+            .thenComparingInt(DustBlock::getZ);
+
+    /**
+     * Interleaves the low 21 bits of the biased coordinates as ...y1z1x1 y0z0x0.
+     */
+    static long mortonKey(int x, int y, int z) {
+        return spread(x + BIAS) | (spread(z + BIAS) << 1) | (spread(y + BIAS) << 2);
+    }
+
+    /** Spreads the low 21 bits of v so that bit i moves to bit 3i. */
+    private static long spread(int v) {
+        long x = v & 0x1FFFFFL;
+        x = (x | (x << 32)) & 0x1F00000000FFFFL;
+        x = (x | (x << 16)) & 0x1F0000FF0000FFL;
+        x = (x | (x << 8)) & 0x100F00F00F00F00FL;
+        x = (x | (x << 4)) & 0x10C30C30C30C30C3L;
+        x = (x | (x << 2)) & 0x1249249249249249L;
+        return x;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.dustcalc.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Growable byte storage outside the Java heap, addressed by long offsets.
+ * The space is split into fixed-size chunks, each a direct ByteBuffer or a
+ * memory-mapped slice of a temporary file, so it is not limited to 2 GiB and,
+ * when file-backed, the OS can page cold chunks out. Values are never split
+ * across chunks as long as they are stored at offsets aligned to their size.
+ * Not thread-safe while growing.
+ */
+final class OffHeapBuffer implements AutoCloseable {
+    static final int CHUNK_SHIFT = 24; // 16 MiB
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    // Backing file, or null for direct memory; deleted on close
+    private final FileChannel channel;
+    private ByteBuffer[] chunks = new ByteBuffer[8];
+    private int chunkCount;
+
+    /**
+     * @param dir directory for the backing file, or null to use direct memory
+     */
+    OffHeapBuffer(Path dir) throws IOException {
+        if (dir == null) {
+            this.channel = null;
+        } else {
+            Path file = Files.createTempFile(dir, "dustcalc", ".bin");
+            try {
+                this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(file);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Makes offsets 0..bytes-1 addressable, adding zeroed chunks as needed.
+     * @throws UncheckedIOException if the backing file cannot be mapped
+     */
+    void ensure(long bytes) {
+        while ((long) chunkCount << CHUNK_SHIFT < bytes) {
+            if (chunkCount == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            }
+            ByteBuffer chunk;
+            if (channel == null) {
+                chunk = ByteBuffer.allocateDirect(1 << CHUNK_SHIFT);
+            } else {
+                try {
+                    chunk = channel.map(FileChannel.MapMode.READ_WRITE, (long) chunkCount << CHUNK_SHIFT, 1 << CHUNK_SHIFT);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            chunks[chunkCount++] = chunk.order(ByteOrder.nativeOrder());
+        }
+    }
+
+    byte getByte(long pos) {
+        return chunks[(int) (pos >>> CHUNK_SHIFT)].get((int) (pos & CHUNK_MASK));
+    }
+
+    void putByte(long pos, byte v) {
+        chunks[(int) (pos >>> CHUNK_SHIFT)].put((int) (pos & CHUNK_MASK), v);
+    }
+
+    short getShort(long pos) {
+        return chunks[(int) (pos >>> CHUNK_SHIFT)].getShort((int) (pos & CHUNK_MASK));
+    }
+
+    void putShort(long pos, short v) {
+        chunks[(int) (pos >>> CHUNK_SHIFT)].putShort((int) (pos & CHUNK_MASK), v);
+    }
+
+    int getInt(long pos) {
+        return chunks[(int) (pos >>> CHUNK_SHIFT)].getInt((int) (pos & CHUNK_MASK));
+    }
+
+    void putInt(long pos, int v) {
+        chunks[(int) (pos >>> CHUNK_SHIFT)].putInt((int) (pos & CHUNK_MASK), v);
+    }
+
+    long getLong(long pos) {
+        return chunks[(int) (pos >>> CHUNK_SHIFT)].getLong((int) (pos & CHUNK_MASK));
+    }
+
+    void putLong(long pos, long v) {
+        chunks[(int) (pos >>> CHUNK_SHIFT)].putLong((int) (pos & CHUNK_MASK), v);
+    }
+
+    /** @return bytes currently reserved */
+    long capacity() {
+        return (long) chunkCount << CHUNK_SHIFT;
+    }
+
+    /**
+     * Drops every chunk and deletes the backing file. The memory itself is
+     * released once the buffers are collected.
+     */
+    @Override
+    public void close() throws IOException {
+        Arrays.fill(chunks, null);
+        chunkCount = 0;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.example.dustcalc.model;
+
+import com.example.dustcalc.input.PowerSourceSpec;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A dust graph kept outside the Java heap, for circuits whose DustBlock
+ * objects would not fit in it. Built by CircuitGraphBuilder#buildOffHeap.
+ * <p>
+ * Dusts are grouped by 16x16x16 region: node ids are dense, and the dusts of
+ * one region hold consecutive ids, sorted by their cell within the region.
+ * Each node is a 16-byte record (cell, power, edge counts and the offset of
+ * its edges), and its edges are node ids: its upstream nodes, then its
+ * ordered update targets. Power sources follow the dusts as ids
+ * size()..size()+sourceCount-1, as in CompiledCircuit. Records and edges
+ * live in OffHeapBuffers, in direct memory or in memory-mapped temporary
+ * files; only the region directory stays on the heap.
+ * A position lookup finds the region by hash, then binary-searches its cells.
+ * Not thread-safe.
+ */
+public final class OffHeapNodeStore implements NodeGraph, AutoCloseable {
+    private static final int REGION_SHIFT = 4;
+    private static final int REGION_MASK = (1 << REGION_SHIFT) - 1;
+
+    // Node record layout
+    private static final int RECORD = 16;
+    private static final int CELL = 0;         // short: x, y, z within the region, 4 bits each
+    private static final int POWER = 2;        // byte
+    private static final int POWER_COUNT = 3;  // byte: upstream edges
+    private static final int UPDATE_COUNT = 4; // byte: update edges
+    private static final int EDGES = 8;        // long: byte offset of the node's edges
+
+    // Staged dust, before layout(): x, y, z and power as ints
+    private static final int STAGED = 16;
+
+    private final Path dir;
+    private final OffHeapBuffer records;
+    private final OffHeapBuffer edges;
+    private long edgeBytes;
+    private OffHeapBuffer staged;
+    private long stagedCount;
+
+    // Region directory: open addressing from packed region position to region index + 1
+    private long[] regionKeys = new long[16];
+    private int[] regionSlots = new int[16];
+    private int regionCount;
+    private int[] regionX = new int[8];
+    private int[] regionY = new int[8];
+    private int[] regionZ = new int[8];
+    // First node id of each region, plus size() at the end; set by layout()
+    private int[] regionStart;
+
+    private int nodeCount;
+    private byte[] sourcePowers = new byte[0];
+
+    /**
+     * Creates an empty store. If a buffer cannot be created, the ones already
+     * created are closed, so no backing file is left behind.
+     * @param dir directory for the memory-mapped files, or null to use direct memory
+     */
+    OffHeapNodeStore(Path dir) throws IOException {
+        this.dir = dir;
+        OffHeapBuffer[] buffers = new OffHeapBuffer[3];
+        try {
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = new OffHeapBuffer(dir);
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            for (OffHeapBuffer buffer : buffers) {
+                if (buffer == null) continue;
+                try {
+                    buffer.close();
+                } catch (IOException closeError) {
+                    e.addSuppressed(closeError);
+                }
+            }
+            throw e;
+        }
+        this.records = buffers[0];
+        this.edges = buffers[1];
+        this.staged = buffers[2];
+    }
+
+    /**
+     * Adds a dust before layout(); when a position repeats, the last dust wins.
+     * @throws IllegalArgumentException if the position is not {@link SpatialIndex#inRange}
+     *                                  or the power is not a level
+     */
+    void stage(int x, int y, int z, int power) {
+        SpatialIndex.checkRange(x, y, z);
+        if (power < 0 || power > 15) {
+            throw new IllegalArgumentException("Dust power out of range at " + x + "," + y + "," + z + ": " + power);
+        }
+        long pos = stagedCount++ * STAGED;
+        staged.ensure(pos + STAGED);
+        staged.putInt(pos, x);
+        staged.putInt(pos + 4, y);
+        staged.putInt(pos + 8, z);
+        staged.putInt(pos + 12, power);
+    }
+
+    /**
+     * Assigns node ids region by region, in order of each region's first dust,
+     * writes the node records and frees the staged input.
+     * @param sources the power sources, in source order
+     */
+    void layout(List<PowerSourceSpec> sources) throws IOException {
+        // 1) Count the staged dusts of each region
+        int[] counts = new int[8];
+        for (long i = 0; i < stagedCount; i++) {
+            long pos = i * STAGED;
+            int r = region(staged.getInt(pos), staged.getInt(pos + 4), staged.getInt(pos + 8), true);
+            if (r == counts.length) {
+                counts = Arrays.copyOf(counts, r * 2);
+            }
+            counts[r]++;
+        }
+
+        // 2) Scatter them into per-region runs, keeping input order within a run
+        long[] runStart = new long[regionCount + 1];
+        for (int r = 0; r < regionCount; r++) {
+            runStart[r + 1] = runStart[r] + counts[r];
+        }
+        long[] cursor = Arrays.copyOf(runStart, regionCount);
+        try (OffHeapBuffer runs = new OffHeapBuffer(dir)) {
+            runs.ensure(stagedCount * 4);
+            for (long i = 0; i < stagedCount; i++) {
+                long pos = i * STAGED;
+                int x = staged.getInt(pos);
+                int y = staged.getInt(pos + 4);
+                int z = staged.getInt(pos + 8);
+                int r = region(x, y, z, false);
+                runs.putInt(cursor[r]++ * 4, cell(x, y, z) << 4 | staged.getInt(pos + 12));
+            }
+            staged.close();
+            staged = null;
+
+            // 3) Sort each run by cell, keeping the last dust per cell, and write the records
+            regionStart = new int[regionCount + 1];
+            long[] run = new long[16];
+            for (int r = 0; r < regionCount; r++) {
+                regionStart[r] = nodeCount;
+                int n = (int) (runStart[r + 1] - runStart[r]);
+                if (run.length < n) {
+                    run = new long[Math.max(n, run.length * 2)];
+                }
+                for (int j = 0; j < n; j++) {
+                    int v = runs.getInt((runStart[r] + j) * 4);
+                    // cell, then input position, then power
+                    run[j] = (long) (v >>> 4) << 36 | (long) j << 4 | (v & 15);
+                }
+                Arrays.sort(run, 0, n);
+                for (int j = 0; j < n; j++) {
+                    if (j + 1 < n && run[j + 1] >>> 36 == run[j] >>> 36) continue;
+                    long base = (long) nodeCount++ * RECORD;
+                    records.ensure(base + RECORD);
+                    records.putShort(base + CELL, (short) (run[j] >>> 36));
+                    records.putByte(base + POWER, (byte) (run[j] & 15));
+                }
+            }
+            regionStart[regionCount] = nodeCount;
+        }
+
+        sourcePowers = new byte[sources.size()];
+        for (int s = 0; s < sources.size(); s++) {
+            sourcePowers[s] = (byte) sources.get(s).finalPower();
+        }
+    }
+
+    /**
+     * Stores the edges of node {@code id}; nodes must be given in id order, after layout().
+     * Upstream ids at or above size() are sources.
+     */
+    void appendEdges(int id, int[] powerTargets, int powerCount, int[] updateTargets, int updateCount) {
+        if (powerCount > 0xFF || updateCount > 0xFF) {
+            throw new IllegalArgumentException("Too many edges at node " + id);
+        }
+        long base = (long) id * RECORD;
+        records.putByte(base + POWER_COUNT, (byte) powerCount);
+        records.putByte(base + UPDATE_COUNT, (byte) updateCount);
+        records.putLong(base + EDGES, edgeBytes);
+        edges.ensure(edgeBytes + 4L * (powerCount + updateCount));
+        for (int i = 0; i < powerCount; i++) {
+            edges.putInt(edgeBytes, powerTargets[i]);
+            edgeBytes += 4;
+        }
+        for (int i = 0; i < updateCount; i++) {
+            edges.putInt(edgeBytes, updateTargets[i]);
+            edgeBytes += 4;
+        }
+    }
+
+    @Override
+    public int size() {
+        return nodeCount;
+    }
+
+    /** @return number of power sources */
+    public int sourceCount() {
+        return sourcePowers.length;
+    }
+
+    @Override
+    public int indexOf(int x, int y, int z) {
+        // Regions of out-of-range positions would share keys with real ones
+        int r = SpatialIndex.inRange(x, y, z) ? region(x, y, z, false) : -1;
+        if (r < 0) {
+            return -1;
+        }
+        int cell = cell(x, y, z);
+        int lo = regionStart[r];
+        int hi = regionStart[r + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = cellOf(mid);
+            if (c < cell) {
+                lo = mid + 1;
+            } else if (c > cell) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int x(int id) {
+        return regionX[regionOf(id)] << REGION_SHIFT | cellOf(id) >>> 8;
+    }
+
+    @Override
+    public int y(int id) {
+        return regionY[regionOf(id)] << REGION_SHIFT | (cellOf(id) >>> 4 & REGION_MASK);
+    }
+
+    @Override
+    public int z(int id) {
+        return regionZ[regionOf(id)] << REGION_SHIFT | (cellOf(id) & REGION_MASK);
+    }
+
+    @Override
+    public int power(int id) {
+        return records.getByte((long) id * RECORD + POWER);
+    }
+
+    @Override
+    public void setPower(int id, int power) {
+        records.putByte((long) id * RECORD + POWER, (byte) power);
+    }
+
+    @Override
+    public int maxUpstreamPower(int id) {
+        long base = (long) id * RECORD;
+        int count = records.getByte(base + POWER_COUNT) & 0xFF;
+        long e = records.getLong(base + EDGES);
+        int max = 0;
+        for (int i = 0; i < count; i++) {
+            int up = edges.getInt(e + 4L * i);
+            max = Math.max(max, up < nodeCount ? power(up) : sourcePowers[up - nodeCount]);
+        }
+        return max;
+    }
+
+    @Override
+    public int updateTargetCount(int id) {
+        return records.getByte((long) id * RECORD + UPDATE_COUNT) & 0xFF;
+    }
+
+    @Override
+    public int updateTarget(int id, int i) {
+        long base = (long) id * RECORD;
+        int powerCount = records.getByte(base + POWER_COUNT) & 0xFF;
+        return edges.getInt(records.getLong(base + EDGES) + 4L * (powerCount + i));
+    }
+
+    /** @return bytes reserved outside the heap for records and edges */
+    public long offHeapBytes() {
+        return records.capacity() + edges.capacity();
+    }
+
+    /** Releases the off-heap memory and deletes the backing files. */
+    @Override
+    public void close() throws IOException {
+        if (staged != null) {
+            staged.close();
+        }
+        records.close();
+        edges.close();
+    }
+
+    private int cellOf(int id) {
+        return records.getShort((long) id * RECORD + CELL) & 0xFFFF;
+    }
+
+    private static int cell(int x, int y, int z) {
+        return (x & REGION_MASK) << 8 | (y & REGION_MASK) << 4 | (z & REGION_MASK);
+    }
+
+    /** @return the region holding node {@code id}: the last one starting at or before it */
+    private int regionOf(int id) {
+        int lo = 0;
+        int hi = regionCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (regionStart[mid] <= id) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return the index of the region containing (x,y,z), or -1 if it has no dust;
+     *         with {@code add}, a missing region is added instead
+     */
+    private int region(int x, int y, int z, boolean add) {
+        int rx = x >> REGION_SHIFT;
+        int ry = y >> REGION_SHIFT;
+        int rz = z >> REGION_SHIFT;
+        long key = SpatialIndex.pack(rx, ry, rz);
+        int mask = regionKeys.length - 1;
+        int i = SpatialIndex.mix(key) & mask;
+        while (regionSlots[i] != 0) {
+            if (regionKeys[i] == key) {
+                return regionSlots[i] - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        if (!add) {
+            return -1;
+        }
+        int r = regionCount++;
+        if (r == regionX.length) {
+            regionX = Arrays.copyOf(regionX, r * 2);
+            regionY = Arrays.copyOf(regionY, r * 2);
+            regionZ = Arrays.copyOf(regionZ, r * 2);
+        }
+        regionX[r] = rx;
+        regionY[r] = ry;
+        regionZ[r] = rz;
+        regionKeys[i] = key;
+        regionSlots[i] = r + 1;
+        if (regionCount * 2 > regionKeys.length) {
+            rehashRegions(regionKeys.length * 2);
+        }
+        return r;
+    }
+
+    private void rehashRegions(int capacity) {
+        long[] oldKeys = regionKeys;
+        int[] oldSlots = regionSlots;
+        regionKeys = new long[capacity];
+        regionSlots = new int[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldSlots[j] == 0) continue;
+            int i = SpatialIndex.mix(oldKeys[j]) & mask;
+            while (regionSlots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            regionKeys[i] = oldKeys[j];
+            regionSlots[i] = oldSlots[j];
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.dustcalc.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many independent scenarios in parallel against one CompiledCircuit.
+ * The circuit is immutable and shared by every task. A run submits one task
+ * per worker, up to the parallelism; each owns a ScenarioRunner, and with it a
+ * private power array, and claims contiguous chunks of scenarios until none
+ * are left, resetting its runner between scenarios. Tracer state is therefore
+ * allocated once per worker, however many scenarios there are. Works with any
+ * ExecutorService, e.g. a ForkJoinPool or {@code Executors.newVirtualThreadPerTaskExecutor()}.
+ */
+public class ParallelScenarioRunner {
+    private static final int DEFAULT_CHUNK_SIZE = 32;
+
+    /**
+     * Turns the final state of one scenario into a result. Called on worker
+     * threads, so it must not touch shared mutable state.
+     */
+    @FunctionalInterface
+    public interface ResultMapper<R> {
+        R map(int scenario, long updates, CompiledTracer state);
+    }
+
+    private final CompiledCircuit circuit;
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final int chunkSize;
+
+    public ParallelScenarioRunner(CompiledCircuit circuit, ExecutorService executor) {
+        this(circuit, executor, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Uses the pool's parallelism for a ForkJoinPool, otherwise one worker per processor.
+     * @param chunkSize number of consecutive scenarios a worker claims at a time
+     */
+    public ParallelScenarioRunner(CompiledCircuit circuit, ExecutorService executor, int chunkSize) {
+        this(circuit, executor, executor instanceof ForkJoinPool pool
+                ? pool.getParallelism() : Runtime.getRuntime().availableProcessors(), chunkSize);
+    }
+
+    /**
+     * @param parallelism maximum number of workers, and so of tracers, per run
+     * @param chunkSize   number of consecutive scenarios a worker claims at a time
+     */
+    public ParallelScenarioRunner(CompiledCircuit circuit, ExecutorService executor, int parallelism, int chunkSize) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.circuit = circuit;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Runs every scenario and maps its final state.
+     * @return one result per scenario, in scenario order
+     * @throws InterruptedException if interrupted while waiting for the tasks
+     */
+    public <R> List<R> run(List<Scenario> scenarios, ResultMapper<R> mapper) throws InterruptedException {
+        Object[] results = new Object[scenarios.size()];
+        // Start of the next unclaimed chunk
+        AtomicInteger next = new AtomicInteger();
+        int chunks = (int) ((scenarios.size() + (long) chunkSize - 1) / chunkSize);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int w = 0; w < Math.min(parallelism, chunks); w++) {
+            tasks.add(() -> {
+                ScenarioRunner runner = new ScenarioRunner(circuit);
+                CountingTraceSink counter = new CountingTraceSink();
+                int start;
+                while ((start = next.getAndAdd(chunkSize)) < scenarios.size()) {
+                    int end = Math.min(start + chunkSize, scenarios.size());
+                    for (int i = start; i < end; i++) {
+                        long before = counter.getCount();
+                        CompiledTracer state = runner.run(scenarios.get(i), counter);
+                        results[i] = mapper.map(i, counter.getCount() - before, state);
+                    }
+                }
+                return null;
+            });
+        }
+        // invokeAll waits for every task, which publishes the result slots to this thread
+        for (Future<Void> f : executor.invokeAll(tasks)) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                if (e.getCause() instanceof Error err) throw err;
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        @SuppressWarnings("unchecked")
+        List<R> list = (List<R>) Arrays.asList(results);
+        return list;
+    }
+
+    /**
+     * Runs every scenario and sums the updates they produced.
+     * @throws InterruptedException if interrupted while waiting for the tasks
+     */
+    public long totalUpdates(List<Scenario> scenarios) throws InterruptedException {
+        long total = 0;
+        for (Long updates : run(scenarios, (i, updates, state) -> updates)) {
+            total += updates;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.dustcalc.model;
+
+/**
+ * A set of block positions, stored as packed longs (see {@link SpatialIndex#pack})
+ * in an open-addressing table. Used for constant-time obstacle checks.
+ * Only positions that are {@link SpatialIndex#inRange} can be added.
+ */
+public class PositionSet {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private boolean[] used;
+    private int size;
+
+    public PositionSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize number of positions the set should hold without resizing
+     */
+    public PositionSet(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        this.keys = new long[capacity];
+        this.used = new boolean[capacity];
+    }
+
+    /**
+     * Adds (x,y,z) to the set.
+     * @return true if the position was not already present
+     * @throws IllegalArgumentException if (x,y,z) is not {@link SpatialIndex#inRange}
+     */
+    public boolean add(int x, int y, int z) {
+        SpatialIndex.checkRange(x, y, z);
+        long key = SpatialIndex.pack(x, y, z);
+        int mask = keys.length - 1;
+        int i = SpatialIndex.mix(key) & mask;
+        while (used[i]) {
+            if (keys[i] == key) return false;
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        used[i] = true;
+        if (++size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * @return whether (x,y,z) is in the set
+     */
+    public boolean contains(int x, int y, int z) {
+        if (!SpatialIndex.inRange(x, y, z)) return false;
+        long key = SpatialIndex.pack(x, y, z);
+        int mask = keys.length - 1;
+        int i = SpatialIndex.mix(key) & mask;
+        while (used[i]) {
+            if (keys[i] == key) return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Removes (x,y,z) from the set.
+     * @return true if the position was present
+     */
+    public boolean remove(int x, int y, int z) {
+        if (!SpatialIndex.inRange(x, y, z)) return false;
+        long key = SpatialIndex.pack(x, y, z);
+        int mask = keys.length - 1;
+        int i = SpatialIndex.mix(key) & mask;
+        while (used[i]) {
+            if (keys[i] == key) {
+                // Backward-shift deletion keeps every probe chain unbroken
+                int hole = i;
+                for (int j = (i + 1) & mask; used[j]; j = (j + 1) & mask) {
+                    int home = SpatialIndex.mix(keys[j]) & mask;
+                    if (((j - home) & mask) >= ((j - hole) & mask)) {
+                        keys[hole] = keys[j];
+                        hole = j;
+                    }
+                }
+                used[hole] = false;
+                size--;
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        keys = new long[capacity];
+        used = new boolean[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (!oldUsed[j]) continue;
+            int i = SpatialIndex.mix(oldKeys[j]) & mask;
+            while (used[i]) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            used[i] = true;
+        }
+    }
+}
@@ -7,6 +7,7 @@ import com.example.dustcalc.input.PowerSourceSpec;
  * Holds an immutable power level and a cardinal-direction mask.
  */
 public class PowerSourceBlock extends PowerBlock {
+    private final PowerSourceSpec spec;
     private final boolean[] powerMask;  // [WEST, EAST, DOWN, UP, NORTH, SOUTH]
     private static final int[][] SOURCE_OFFSETS = {
             {-1,  0,  0}, { 1,  0,  0},
@@ -19,9 +20,17 @@ public class PowerSourceBlock extends PowerBlock {
      */
     public PowerSourceBlock(PowerSourceSpec spec) {
         super(spec.x(), spec.y(), spec.z(), spec.finalPower());
+        this.spec = spec;
         this.powerMask = spec.powerMask();
     }
 
+    /**
+     * @return the spec this source was built from
+     */
+    public PowerSourceSpec getSpec() {
+        return spec;
+    }
+
     /**
      * @return six-element mask of which directions this source powers
      */
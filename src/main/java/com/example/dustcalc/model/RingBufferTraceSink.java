@@ -0,0 +1,60 @@
+package com.example.dustcalc.model;
+
+/**
+ * A TraceSink that keeps only the most recent {@code capacity} updates,
+ * in three primitive arrays that are allocated once.
+ */
+public class RingBufferTraceSink implements TraceSink {
+    private final int[] from;
+    private final int[] to;
+    private final byte[] power;
+    private long total;
+
+    /**
+     * @param capacity number of most recent updates to retain
+     */
+    public RingBufferTraceSink(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.from = new int[capacity];
+        this.to = new int[capacity];
+        this.power = new byte[capacity];
+    }
+
+    @Override
+    public void update(int fromId, int toId, int power) {
+        int slot = (int) (total % from.length);
+        this.from[slot] = fromId;
+        this.to[slot] = toId;
+        this.power[slot] = (byte) power;
+        total++;
+    }
+
+    /** @return number of retained updates */
+    public int size() {
+        return (int) Math.min(total, from.length);
+    }
+
+    /** @return number of updates received, including those overwritten */
+    public long getTotal() {
+        return total;
+    }
+
+    /** @return trace position of the oldest retained update */
+    public long firstIndex() {
+        return total - size();
+    }
+
+    // Accessors for the i-th retained update, oldest first
+    public int fromId(int i) { return from[slot(i)]; }
+    public int toId(int i) { return to[slot(i)]; }
+    public int power(int i) { return power[slot(i)]; }
+
+    private int slot(int i) {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        return (int) ((firstIndex() + i) % from.length);
+    }
+}
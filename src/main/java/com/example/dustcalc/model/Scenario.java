@@ -0,0 +1,24 @@
+package com.example.dustcalc.model;
+
+import java.util.List;
+
+/**
+ * One independent run against a CompiledCircuit: the power state to start from
+ * and the source toggles to apply in order.
+ *
+ * @param initialPowers power per node id, dusts followed by sources (as in
+ *                      {@link CompiledCircuit#initialPowers()}), or null for the circuit's own
+ * @param events        toggles applied in order, each propagating fully before the next
+ */
+public record Scenario(byte[] initialPowers, List<ToggleEvent> events) {
+    public Scenario {
+        events = List.copyOf(events);
+    }
+
+    /**
+     * @return a scenario starting from the circuit's initial powers
+     */
+    public static Scenario of(ToggleEvent... events) {
+        return new Scenario(null, List.of(events));
+    }
+}
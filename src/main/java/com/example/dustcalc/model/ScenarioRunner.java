@@ -0,0 +1,71 @@
+package com.example.dustcalc.model;
+
+import java.util.List;
+
+/**
+ * Runs batches of source-toggle scenarios against one CompiledCircuit.
+ * Every scenario starts from the circuit's initial powers, sources off: the tracer's
+ * power array is restored from a snapshot between scenarios instead of
+ * rebuilding or recompiling the graph.
+ */
+public class ScenarioRunner {
+    /**
+     * Receives the tracer state once a scenario has run all its events.
+     */
+    @FunctionalInterface
+    public interface ScenarioListener {
+        void completed(int scenario, CompiledTracer state);
+    }
+
+    private final CompiledCircuit circuit;
+    private final CompiledTracer tracer;
+
+    public ScenarioRunner(CompiledCircuit circuit) {
+        this.circuit = circuit;
+        this.tracer = new CompiledTracer(circuit);
+    }
+
+    /**
+     * Resets the power state and applies {@code events} in order, streaming
+     * every update to {@code sink}.
+     * @return the tracer, holding the final powers of the scenario
+     */
+    public CompiledTracer run(List<ToggleEvent> events, TraceSink sink) {
+        tracer.reset();
+        return apply(events, sink);
+    }
+
+    /**
+     * Starts from the scenario's initial powers (or the circuit's, if it has none)
+     * and applies its events in order.
+     * @return the tracer, holding the final powers of the scenario
+     */
+    public CompiledTracer run(Scenario scenario, TraceSink sink) {
+        if (scenario.initialPowers() == null) {
+            tracer.reset();
+        } else {
+            tracer.reset(scenario.initialPowers());
+        }
+        return apply(scenario.events(), sink);
+    }
+
+    private CompiledTracer apply(List<ToggleEvent> events, TraceSink sink) {
+        for (ToggleEvent event : events) {
+            if (event.source() < 0 || event.source() >= circuit.sourceCount()) {
+                throw new IllegalArgumentException("No power source with index " + event.source());
+            }
+            tracer.toggle(event.source(), event.power(), sink);
+        }
+        return tracer;
+    }
+
+    /**
+     * Runs each scenario in order, each from the initial state. {@code sink}
+     * receives the updates of all scenarios; {@code listener} is called after each one.
+     */
+    public void runBatch(List<? extends List<ToggleEvent>> scenarios, TraceSink sink, ScenarioListener listener) {
+        for (int i = 0; i < scenarios.size(); i++) {
+            listener.completed(i, run(scenarios.get(i), sink));
+        }
+    }
+}
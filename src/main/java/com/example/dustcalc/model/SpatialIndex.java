@@ -0,0 +1,308 @@
+package com.example.dustcalc.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Coordinate lookup for the dust blocks of one circuit, shared by
+ * CircuitGraphBuilder, UpdateOrderCalculator and UpdateTracer.
+ * Positions are packed into a single long (see {@link #pack}) and stored in an
+ * open-addressing table with linear probing, so a neighbour probe hashes a
+ * primitive instead of building an "x:y:z" String.
+ * Every block also receives a dense id (0..size-1) in insertion order;
+ * {@link #blocks()} returns the blocks in id order. Removing a block moves
+ * the block with the highest id into the freed id, so ids stay dense.
+ * As a NodeGraph it serves the indexed DustBlocks by id.
+ */
+public class SpatialIndex implements NodeGraph {
+    private static final int MIN_CAPACITY = 16;
+
+    // Coordinate ranges that pack() keeps apart: 26-bit X and Z, 12-bit Y, two's complement
+    public static final int MIN_XZ = -(1 << 25);
+    public static final int MAX_XZ = (1 << 25) - 1;
+    public static final int MIN_Y = -(1 << 11);
+    public static final int MAX_Y = (1 << 11) - 1;
+
+    private long[] keys;
+    private int[] slots;        // id + 1 per table slot, 0 = empty
+    private DustBlock[] blocks; // dense, indexed by id
+    private int size;
+
+    public SpatialIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize number of blocks the index should hold without resizing
+     */
+    public SpatialIndex(int expectedSize) {
+        int capacity = tableCapacity(expectedSize);
+        this.keys = new long[capacity];
+        this.slots = new int[capacity];
+        this.blocks = new DustBlock[Math.max(expectedSize, 1)];
+    }
+
+    /**
+     * Builds an index over an existing graph; ids follow the list order.
+     */
+    public static SpatialIndex of(List<DustBlock> graph) {
+        SpatialIndex index = new SpatialIndex(graph.size());
+        for (DustBlock b : graph) {
+            index.put(b);
+        }
+        return index;
+    }
+
+    /**
+     * Packs a position into a long: 26 bits X, 26 bits Z, 12 bits Y
+     * (two's complement), which covers the full Minecraft world border and build height.
+     * Positions outside that range would share keys with positions inside it,
+     * so callers check {@link #inRange} first.
+     */
+    public static long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    /**
+     * @return whether (x,y,z) lies within MIN_XZ..MAX_XZ and MIN_Y..MAX_Y, so that
+     *         {@link #pack} gives it a key of its own
+     */
+    public static boolean inRange(int x, int y, int z) {
+        // Shifted into 0..2^bits-1, each coordinate has no bits above its width; overflow wraps out of range
+        return ((x - MIN_XZ) >>> 26 | (z - MIN_XZ) >>> 26 | (y - MIN_Y) >>> 12) == 0;
+    }
+
+    /**
+     * @throws IllegalArgumentException if (x,y,z) is not {@link #inRange}
+     */
+    static void checkRange(int x, int y, int z) {
+        if (!inRange(x, y, z)) {
+            throw new IllegalArgumentException("Position out of range: " + x + "," + y + "," + z
+                    + " (X and Z must be " + MIN_XZ + ".." + MAX_XZ + ", Y " + MIN_Y + ".." + MAX_Y + ")");
+        }
+    }
+
+    /**
+     * Inserts a block at its own position. A block already stored at that
+     * position is replaced and keeps its id.
+     * @return the id of the block
+     * @throws IllegalArgumentException if the block's position is not {@link #inRange}
+     */
+    public int put(DustBlock block) {
+        checkRange(block.getX(), block.getY(), block.getZ());
+        long key = pack(block.getX(), block.getY(), block.getZ());
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (slots[i] != 0) {
+            if (keys[i] == key) {
+                int id = slots[i] - 1;
+                blocks[id] = block;
+                block.id = id;
+                return id;
+            }
+            i = (i + 1) & mask;
+        }
+        int id = size++;
+        if (id == blocks.length) {
+            blocks = Arrays.copyOf(blocks, blocks.length * 2);
+        }
+        blocks[id] = block;
+        block.id = id;
+        keys[i] = key;
+        slots[i] = id + 1;
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * Removes the block at (x,y,z). The block holding the last id, if it is
+     * another one, takes over the removed block's id.
+     * @return the removed block, or null if there was none
+     */
+    public DustBlock remove(int x, int y, int z) {
+        int i = inRange(x, y, z) ? slotOf(pack(x, y, z)) : -1;
+        if (i < 0) {
+            return null;
+        }
+        int id = slots[i] - 1;
+        DustBlock removed = blocks[id];
+        deleteSlot(i);
+        int last = --size;
+        if (id != last) {
+            DustBlock moved = blocks[last];
+            blocks[id] = moved;
+            moved.id = id;
+            slots[slotOf(pack(moved.getX(), moved.getY(), moved.getZ()))] = id + 1;
+        }
+        blocks[last] = null;
+        return removed;
+    }
+
+    /**
+     * @return the id of the block at (x,y,z), or -1 if there is none
+     */
+    @Override
+    public int indexOf(int x, int y, int z) {
+        if (!inRange(x, y, z)) {
+            return -1;
+        }
+        long key = pack(x, y, z);
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        int slot;
+        while ((slot = slots[i]) != 0) {
+            if (keys[i] == key) {
+                return slot - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the block at (x,y,z), or null if there is none
+     */
+    public DustBlock get(int x, int y, int z) {
+        int id = indexOf(x, y, z);
+        return id < 0 ? null : blocks[id];
+    }
+
+    /**
+     * @return the block with the given id
+     */
+    public DustBlock get(int id) {
+        return blocks[id];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int x(int id) {
+        return blocks[id].getX();
+    }
+
+    @Override
+    public int y(int id) {
+        return blocks[id].getY();
+    }
+
+    @Override
+    public int z(int id) {
+        return blocks[id].getZ();
+    }
+
+    @Override
+    public int power(int id) {
+        return blocks[id].getPower();
+    }
+
+    @Override
+    public void setPower(int id, int power) {
+        blocks[id].setPower(power);
+    }
+
+    @Override
+    public int maxUpstreamPower(int id) {
+        return blocks[id].maxUpstreamPower();
+    }
+
+    @Override
+    public int updateTargetCount(int id) {
+        return blocks[id].updateTargetCount();
+    }
+
+    /**
+     * Maps the target block to its id through the id this index gave it, so a
+     * prompt costs no hash probe. Only a block that another index has stored
+     * since is resolved by a position lookup.
+     */
+    @Override
+    public int updateTarget(int id, int i) {
+        DustBlock target = blocks[id].updateTargetAt(i);
+        int targetId = target.id;
+        if (targetId >= 0 && targetId < size && blocks[targetId] == target) {
+            return targetId;
+        }
+        return indexOf(target.getX(), target.getY(), target.getZ());
+    }
+
+    /**
+     * @return an immutable view of all blocks in id order
+     */
+    public List<DustBlock> blocks() {
+        return Collections.unmodifiableList(Arrays.asList(blocks).subList(0, size));
+    }
+
+    /**
+     * Removes all blocks; ids restart at 0.
+     */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        Arrays.fill(blocks, 0, size, null);
+        size = 0;
+    }
+
+    private int slotOf(long key) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (slots[i] != 0) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /** Backward-shift deletion: moves later entries of the probe chain into the hole. */
+    private void deleteSlot(int hole) {
+        int mask = keys.length - 1;
+        for (int i = (hole + 1) & mask; slots[i] != 0; i = (i + 1) & mask) {
+            int home = mix(keys[i]) & mask;
+            // The entry may fill the hole if the hole lies between its home slot and i
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                slots[hole] = slots[i];
+                hole = i;
+            }
+        }
+        slots[hole] = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldSlots = slots;
+        keys = new long[capacity];
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldSlots[j] == 0) continue;
+            int i = mix(oldKeys[j]) & mask;
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            slots[i] = oldSlots[j];
+        }
+    }
+
+    private static int tableCapacity(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /** Fibonacci hashing; the high bits carry the mixed key. */
+    static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
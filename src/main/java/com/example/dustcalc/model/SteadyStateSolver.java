@@ -0,0 +1,112 @@
+package com.example.dustcalc.model;
+
+import java.util.Arrays;
+
+/**
+ * Computes the final power of every dust directly, without tracing updates.
+ * <p>
+ * A dust's power is {@code max(upstream) - 1} clamped at 0 (the powerTargets
+ * rule the tracers apply). Dust can not keep itself powered, so there is exactly
+ * one state satisfying that rule for every dust: each dust holds the best
+ * {@code sourcePower - distance} over the power paths from any source. The
+ * solver finds it with a bucket queue over levels 15..1: a dust is final when
+ * its bucket is drained, and its downstream dusts are only relaxed then, so a
+ * solve runs in O(nodes + edges) and allocates nothing.
+ * <p>
+ * {@code traceAll} reaches this same state whenever it starts from a consistent
+ * one, i.e. every dust already obeying the rule for the sources as they were
+ * before the change (for example all dust at 0 with the sources off). From an
+ * inconsistent start the tracer may leave dusts it never visits at stale levels,
+ * which the solver would correct.
+ * <p>
+ * A solver holds its own scratch arrays; use one per thread.
+ */
+public class SteadyStateSolver {
+    private static final int MAX_POWER = 15;
+
+    private final CompiledCircuit circuit;
+    // Reverse power edges: for node u (dust or source), the dusts that take power from u
+    private final int[] downOffsets;
+    private final int[] downEdges;
+    // Bucket queue: one linked list of pushed nodes per power level
+    private final int[] heads = new int[MAX_POWER + 1];
+    private final int[] entryNode;
+    private final int[] entryNext;
+
+    public SteadyStateSolver(CompiledCircuit circuit) {
+        this.circuit = circuit;
+        this.downOffsets = circuit.downOffsets();
+        this.downEdges = circuit.downEdges();
+        // Every push follows a relaxed edge, and every edge is relaxed at most once
+        entryNode = new int[downEdges.length];
+        entryNext = new int[downEdges.length];
+    }
+
+    /**
+     * @return the steady-state powers with every source switched on to its
+     *         {@link CompiledCircuit#sourcePower}, dusts followed by sources
+     */
+    public byte[] solve() {
+        int n = circuit.nodeCount();
+        byte[] powers = circuit.initialPowers();
+        for (int s = 0; s < circuit.sourceCount(); s++) {
+            powers[n + s] = (byte) circuit.sourcePower(s);
+        }
+        solve(powers);
+        return powers;
+    }
+
+    /**
+     * Overwrites the dust levels in {@code powers} (ids 0..nodeCount-1) with the
+     * steady state for the source levels it holds at ids nodeCount and above.
+     * @throws IllegalArgumentException if a source level is outside 0..15;
+     *                                  {@code powers} is left unchanged then
+     */
+    public void solve(byte[] powers) {
+        int n = circuit.nodeCount();
+        if (powers.length != n + circuit.sourceCount()) {
+            throw new IllegalArgumentException("Expected " + (n + circuit.sourceCount())
+                    + " power levels, got " + powers.length);
+        }
+        for (int u = n; u < powers.length; u++) {
+            if (powers[u] < 0 || powers[u] > MAX_POWER) {
+                throw new IllegalArgumentException("Power level out of range for source " + (u - n) + ": " + powers[u]);
+            }
+        }
+        Arrays.fill(powers, 0, n, (byte) 0);
+        Arrays.fill(heads, -1);
+        int entries = 0;
+        for (int u = n; u < powers.length; u++) {
+            entries = relax(u, powers[u], powers, entries);
+        }
+        for (int level = MAX_POWER; level > 1; level--) {
+            // Relaxing from level L only pushes to L - 1, so draining head-first is safe
+            while (heads[level] >= 0) {
+                int entry = heads[level];
+                heads[level] = entryNext[entry];
+                int d = entryNode[entry];
+                if (powers[d] == level) {
+                    entries = relax(d, level, powers, entries);
+                }
+            }
+        }
+    }
+
+    /** Offers {@code level - 1} to every dust powered by {@code u}. */
+    private int relax(int u, int level, byte[] powers, int entries) {
+        int next = level - 1;
+        if (next <= 0) {
+            return entries;
+        }
+        for (int e = downOffsets[u]; e < downOffsets[u + 1]; e++) {
+            int d = downEdges[e];
+            if (powers[d] < next) {
+                powers[d] = (byte) next;
+                entryNode[entries] = d;
+                entryNext[entries] = heads[next];
+                heads[next] = entries++;
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.dustcalc.model;
+
+/**
+ * One step of a scenario: set power source {@code source} (its index in
+ * the compiled circuit) to {@code power} and propagate the change.
+ */
+public record ToggleEvent(int source, int power) {
+    public ToggleEvent {
+        if (power < 0 || power > 15) {
+            throw new IllegalArgumentException("Power level out of range: " + power);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.dustcalc.model;
+
+/**
+ * Receives every update-call of a trace as it happens.
+ * Node ids are those of the tracer emitting the updates (SpatialIndex ids for
+ * UpdateTracer, node ids for CompiledTracer); the power source is {@link #SOURCE}.
+ */
+@FunctionalInterface
+public interface TraceSink {
+    /** Id used as {@code fromId} for updates triggered directly by the power source. */
+    int SOURCE = -1;
+
+    /**
+     * Called once per effective update, in trace order.
+     * @param fromId node that prompted the update, or {@link #SOURCE}
+     * @param toId   node whose power changed
+     * @param power  its new power (0–15)
+     */
+    void update(int fromId, int toId, int power);
+}
@@ -0,0 +1,33 @@
+package com.example.dustcalc.model;
+
+import java.time.Duration;
+
+/**
+ * Limits on the work of one trace, checked by UpdateTracer and CompiledTracer.
+ * When a limit is reached the trace stops with an UpdateBudgetExceededException
+ * carrying a BudgetReport. A limit of 0 (or a null maxTime) means no limit.
+ *
+ * @param maxUpdates     most power changes in total
+ * @param maxVisits      most prompts, whether or not they change a power
+ * @param maxTime        most wall-clock time, checked every 1024 visits
+ * @param maxNodeUpdates most power changes of any single node
+ */
+public record UpdateBudget(long maxUpdates, long maxVisits, Duration maxTime, int maxNodeUpdates) {
+    /** No limits. */
+    public static final UpdateBudget UNLIMITED = new UpdateBudget(0, 0, null, 0);
+
+    public UpdateBudget {
+        if (maxUpdates < 0 || maxVisits < 0 || maxNodeUpdates < 0
+                || (maxTime != null && maxTime.isNegative())) {
+            throw new IllegalArgumentException("Negative update budget");
+        }
+        if (maxTime != null && maxTime.isZero()) {
+            maxTime = null;
+        }
+    }
+
+    /** @return whether no limit is set */
+    public boolean isUnlimited() {
+        return maxUpdates == 0 && maxVisits == 0 && maxTime == null && maxNodeUpdates == 0;
+    }
+}
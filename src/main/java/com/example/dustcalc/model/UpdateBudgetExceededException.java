@@ -0,0 +1,23 @@
+package com.example.dustcalc.model;
+
+/**
+ * Thrown by a tracer when a trace reaches a limit of its UpdateBudget.
+ * The updates reported to the sink before it was thrown are the partial
+ * result: the update that would have gone over the limit is not applied, so
+ * the tracer's power state and the report's counters match the sink exactly.
+ */
+public class UpdateBudgetExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final BudgetReport report;
+
+    public UpdateBudgetExceededException(BudgetReport report) {
+        super("Update budget exceeded: " + report.limit());
+        this.report = report;
+    }
+
+    /** @return counters, hottest nodes and cycles at the point the trace stopped */
+    public BudgetReport getReport() {
+        return report;
+    }
+}
@@ -1,13 +1,23 @@
 package com.example.dustcalc.model;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Computes and applies the redstone-dust update ordering for each DustBlock.
  * Each block independently generates an ordered list of neighbor updates:
  *  - Compute 7 "second-order" positions (self + 6 directions) in perturbed order
  *  - For each second-order position, compute 6 "first-order" neighbor updates (-X,+X,-Y,+Y,-Z,+Z)
- *  - Deduplicate while preserving order and map to existing DustBlocks
+ *  - Map to existing DustBlocks, keeping repeated positions unless compact mode is on
+ *
+ * In compact mode only the first occurrence of each position is kept. This
+ * never changes a trace: every dust that powers a node has that node in its
+ * own update region, so any change to the node's upstream after its first
+ * prompt is followed by a prompt from the changed dust before control returns.
+ * A later duplicate prompt therefore always finds the node's power already
+ * up to date, and pulls without effect.
  */
 public class UpdateOrderCalculator {
 
@@ -23,77 +33,189 @@ public class UpdateOrderCalculator {
     // Exactly six first-order neighbor offsets, in fixed order
     private static final int[][] FIRST_ORDER_OFFSETS = PowerSourceBlock.getSourceOffsets();
 
-    /** Applies ordering to each DustBlock's updateTargets. */
-    public void applyOrdering(List<DustBlock> graph) {
-        // Build coordinate lookup
-        Map<String, DustBlock> lookup = new HashMap<>();
-        for (DustBlock b : graph) {
-            lookup.put(key(b.getX(), b.getY(), b.getZ()), b);
+    // Position of each second-order offset within TIE_BREAK_ORDER
+    private static final int[] TIE_RANK = new int[SECOND_ORDER_OFFSETS.length];
+
+    // Update positions per block, and so the most update targets a block can have
+    static final int SLOTS = 42;
+
+    // The 42 update positions relative to the block, six per second-order offset:
+    // slot (ord * 6 + k) = SECOND_ORDER_OFFSETS[ord] + FIRST_ORDER_OFFSETS[k]
+    private static final int[] SLOT_DX = new int[SLOTS];
+    private static final int[] SLOT_DY = new int[SLOTS];
+    private static final int[] SLOT_DZ = new int[SLOTS];
+
+    // The distinct positions among the 42 slots: a block's updateTargets can only
+    // change when a dust appears or disappears at one of these offsets from it
+    static final int[][] UPDATE_REGION;
+    // Index into UPDATE_REGION of each slot's position
+    private static final int[] SLOT_REGION = new int[SLOTS];
+
+    static {
+        for (int i = 0; i < TIE_BREAK_ORDER.length; i++) {
+            TIE_RANK[TIE_BREAK_ORDER[i]] = i;
         }
-        // For each block, generate all 42 update orders
-        for (DustBlock b : graph) {
-            b.clearUpdateTargets();
-            List<int[]> secondOrder = computeSecondOrderOffsets(b.getX(), b.getY(), b.getZ());
-            for (int[] base : secondOrder) {
-                int bx = b.getX() + base[0];
-                int by = b.getY() + base[1];
-                int bz = b.getZ() + base[2];
-                List<int[]> firsts = computeFirstOrderOffsets(bx, by, bz);
-                for (int[] f : firsts) {
-                    String k = key(f[0], f[1], f[2]);
-                    if (lookup.containsKey(k)) {
-                        b.addUpdateTarget(lookup.get(k));
-                    }
-                }
+        for (int ord = 0; ord < SECOND_ORDER_OFFSETS.length; ord++) {
+            for (int k = 0; k < FIRST_ORDER_OFFSETS.length; k++) {
+                int slot = ord * 6 + k;
+                SLOT_DX[slot] = SECOND_ORDER_OFFSETS[ord][0] + FIRST_ORDER_OFFSETS[k][0];
+                SLOT_DY[slot] = SECOND_ORDER_OFFSETS[ord][1] + FIRST_ORDER_OFFSETS[k][1];
+                SLOT_DZ[slot] = SECOND_ORDER_OFFSETS[ord][2] + FIRST_ORDER_OFFSETS[k][2];
             }
         }
+        List<int[]> region = new ArrayList<>();
+        for (int slot = 0; slot < SLOT_DX.length; slot++) {
+            int r = 0;
+            while (r < region.size() && !Arrays.equals(region.get(r),
+                    new int[]{SLOT_DX[slot], SLOT_DY[slot], SLOT_DZ[slot]})) {
+                r++;
+            }
+            if (r == region.size()) {
+                region.add(new int[]{SLOT_DX[slot], SLOT_DY[slot], SLOT_DZ[slot]});
+            }
+            SLOT_REGION[slot] = r;
+        }
+        UPDATE_REGION = region.toArray(new int[0][]);
+    }
+
+    // Pool for ordering blocks, or null to order sequentially
+    private final ForkJoinPool pool;
+    // Keep only the first occurrence of each update position
+    private final boolean compact;
+
+    public UpdateOrderCalculator() {
+        this(null, false);
     }
 
     /**
-     * Computes perturbed second-order offsets in correct order.
+     * Creates a calculator that orders blocks in parallel on {@code pool}.
+     * Each block's list only depends on its own position and the read-only
+     * index, so the result is identical to the sequential one.
      */
-    private List<int[]> computeSecondOrderOffsets(int x, int y, int z) {
-        // Pair offsets with their hash index and ordinal
-        record Off(int[] off, int idx, int ord) {}
-        List<Off> list = new ArrayList<>();
-        for (int i = 0; i < SECOND_ORDER_OFFSETS.length; i++) {
-            int[] off = SECOND_ORDER_OFFSETS[i];
-            int idx = computeIndex(x + off[0], y + off[1], z + off[2]);
-            list.add(new Off(off, idx, i));
-        }
-        // Sort by idx, then tie-break via fixed order
-        list.sort((a, b) -> {
-            int c = Integer.compare(a.idx, b.idx);
-            if (c != 0) return c;
-            for (int tie : TIE_BREAK_ORDER) {
-                if (tie == a.ord) return -1;
-                if (tie == b.ord) return  1;
+    public UpdateOrderCalculator(ForkJoinPool pool) {
+        this(pool, false);
+    }
+
+    /**
+     * @param pool    pool for parallel ordering, or null for sequential
+     * @param compact whether to drop repeated update positions (see the class comment)
+     */
+    public UpdateOrderCalculator(ForkJoinPool pool, boolean compact) {
+        this.pool = pool;
+        this.compact = compact;
+    }
+
+    /** Applies ordering to each DustBlock's updateTargets. */
+    public void applyOrdering(List<DustBlock> graph) {
+        applyOrdering(graph, SpatialIndex.of(graph));
+    }
+
+    /** Applies ordering to each DustBlock's updateTargets, resolving neighbors through a shared index. */
+    public void applyOrdering(List<DustBlock> graph, SpatialIndex lookup) {
+        // For each block, generate all 42 update orders; one scratch array per range of blocks
+        BlockRangeTask.forEachRange(pool, graph.size(), (from, to) -> {
+            int[] scratch = new int[SLOTS];
+            for (int i = from; i < to; i++) {
+                orderBlock(graph.get(i), lookup, compact, scratch);
             }
-            return 0;
         });
-        // Extract offsets
-        List<int[]> result = new ArrayList<>();
-        for (Off o : list) result.add(o.off);
-        return result;
     }
 
-    /** Generates six first-order neighbor offsets from (x,y,z). */
-    private List<int[]> computeFirstOrderOffsets(int x, int y, int z) {
-        List<int[]> result = new ArrayList<>();
-        for (int[] off : FIRST_ORDER_OFFSETS) {
-            result.add(new int[]{x + off[0], y + off[1], z + off[2]});
+    /**
+     * Replaces the updateTargets of one block with its 42 ordered update positions.
+     * @param scratch array of at least {@link #SLOTS} entries, overwritten
+     */
+    static void orderBlock(DustBlock b, SpatialIndex lookup, int[] scratch) {
+        orderBlock(b, lookup, false, scratch);
+    }
+
+    /**
+     * Same as {@link #orderBlock(DustBlock, SpatialIndex, int[])}; in compact mode
+     * each position is only added the first time it comes up.
+     */
+    static void orderBlock(DustBlock b, SpatialIndex lookup, boolean compact, int[] scratch) {
+        b.clearUpdateTargets();
+        int count = orderIds(b.getX(), b.getY(), b.getZ(), lookup, compact, scratch);
+        for (int i = 0; i < count; i++) {
+            b.addUpdateTarget(lookup.get(scratch[i]));
+        }
+    }
+
+    /**
+     * Computes the ordered update targets of the block at (x,y,z) as node ids of
+     * {@code lookup}, in the order {@link #orderBlock(DustBlock, SpatialIndex, boolean, int[])}
+     * adds them, into a new array of their exact length, for lists that are kept.
+     */
+    static int[] orderIds(int x, int y, int z, NodeGraph lookup, boolean compact) {
+        int[] ids = new int[SLOTS];
+        return Arrays.copyOf(ids, orderIds(x, y, z, lookup, compact, ids));
+    }
+
+    /**
+     * Writes the ordered update targets of the block at (x,y,z) into {@code ids},
+     * which must hold {@link #SLOTS} entries; allocates nothing.
+     * @return number of targets written
+     */
+    static int orderIds(int x, int y, int z, NodeGraph lookup, boolean compact, int[] ids) {
+        int count = 0;
+        int order = secondOrderPermutation(x, y, z);
+        int seen = 0; // bit per UPDATE_REGION position, compact mode only
+        for (int r = 0; r < SECOND_ORDER_OFFSETS.length; r++) {
+            int base = ((order >>> (3 * r)) & 7) * 6;
+            for (int slot = base; slot < base + 6; slot++) {
+                if (compact) {
+                    int bit = 1 << SLOT_REGION[slot];
+                    if ((seen & bit) != 0) continue;
+                    seen |= bit;
+                }
+                int id = lookup.indexOf(x + SLOT_DX[slot], y + SLOT_DY[slot], z + SLOT_DZ[slot]);
+                if (id >= 0) {
+                    ids[count++] = id;
+                }
+            }
         }
-        return result;
+        return count;
+    }
+
+    /**
+     * Computes the perturbed order of the seven second-order offsets around (x,y,z):
+     * ascending by index, ties broken by TIE_BREAK_ORDER. Each offset gets the
+     * unique key (index * 8 + tie rank) and its position is the number of smaller
+     * keys, so no sort or allocation is needed.
+     * @return packed permutation; bits [3r, 3r+3) hold the offset ordinal at position r
+     */
+    static int secondOrderPermutation(int x, int y, int z) {
+        int k0 = sortKey(0, x, y, z);
+        int k1 = sortKey(1, x - 1, y, z);
+        int k2 = sortKey(2, x + 1, y, z);
+        int k3 = sortKey(3, x, y - 1, z);
+        int k4 = sortKey(4, x, y + 1, z);
+        int k5 = sortKey(5, x, y, z - 1);
+        int k6 = sortKey(6, x, y, z + 1);
+        return place(0, k0, k0, k1, k2, k3, k4, k5, k6)
+                | place(1, k1, k0, k1, k2, k3, k4, k5, k6)
+                | place(2, k2, k0, k1, k2, k3, k4, k5, k6)
+                | place(3, k3, k0, k1, k2, k3, k4, k5, k6)
+                | place(4, k4, k0, k1, k2, k3, k4, k5, k6)
+                | place(5, k5, k0, k1, k2, k3, k4, k5, k6)
+                | place(6, k6, k0, k1, k2, k3, k4, k5, k6);
+    }
+
+    private static int sortKey(int ord, int x, int y, int z) {
+        return (computeIndex(x, y, z) << 3) | TIE_RANK[ord];
+    }
+
+    /** Puts ordinal {@code ord} at the position given by the number of keys below {@code k}. */
+    private static int place(int ord, int k, int k0, int k1, int k2, int k3, int k4, int k5, int k6) {
+        int rank = (k0 < k ? 1 : 0) + (k1 < k ? 1 : 0) + (k2 < k ? 1 : 0) + (k3 < k ? 1 : 0)
+                + (k4 < k ? 1 : 0) + (k5 < k ? 1 : 0) + (k6 < k ? 1 : 0);
+        return ord << (3 * rank);
     }
 
     /** Computes dust perturbation index: K=x+31y+961z, h=K^(K>>>16), index=h&0xF. */
-    private int computeIndex(int x, int y, int z) {
+    private static int computeIndex(int x, int y, int z) {
         int K = x + 31 * y + 961 * z;
         int h = K ^ (K >>> 16);
         return h & 0xF;
     }
-
-    private String key(int x, int y, int z) {
-        return x + ":" + y + ":" + z;
-    }
 }
\ No newline at end of file
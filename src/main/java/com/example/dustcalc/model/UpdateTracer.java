@@ -1,6 +1,7 @@
 package com.example.dustcalc.model;
 
 import com.example.dustcalc.input.PowerSourceSpec;
+import com.example.dustcalc.metrics.PropagationMetrics;
 import java.util.*;
 
 /**
@@ -9,6 +10,11 @@ import java.util.*;
  * Uses push-trigger and pull-compute: when prompted, a dust pulls
  * its new power from all upstream powerTargets, and if it changes,
  * records the update and prompts its updateTargets.
+ * The default engine walks the same depth-first order with an explicit,
+ * reusable work stack, so arbitrarily deep cascades run in constant
+ * thread-stack depth; the recursive engine is kept as a reference.
+ * The iterative engine reads and writes nodes through a NodeGraph, so it also
+ * runs on graphs stored outside the heap, such as an OffHeapNodeStore.
  */
 public class UpdateTracer {
 
@@ -21,16 +27,60 @@ public class UpdateTracer {
     private static final int[][] SOURCE_OFFSETS = PowerSourceBlock.getSourceOffsets();
 
     private final List<TraceEntry> trace = new ArrayList<>();
-    private final Map<String, DustBlock> lookup;
+    // Nodes for the iterative engine
+    private final NodeGraph nodes;
+    // DustBlocks for the recursive engine, or null when tracing a NodeGraph
+    private final SpatialIndex lookup;
     private final int[] initialPowers;
+    // Counters for the iterative engine, or null when metrics are disabled
+    private final PropagationMetrics metrics;
+    // Limits for each trace, or null when unlimited
+    private BudgetMeter budget;
+
+    // Iterative engine: "x:y:z" label per node id, filled on first update
+    private String[] labels;
+    // Work stack frames: node id and position in its updateTargets
+    private int[] stackNodes = new int[64];
+    private int[] stackCursors = new int[64];
 
     public UpdateTracer(List<DustBlock> graph) {
-        this.lookup = new HashMap<>();
+        this(graph, SpatialIndex.of(graph));
+    }
+
+    /**
+     * @param graph  the ordered dust graph
+     * @param lookup index over the same blocks, e.g. the one filled by CircuitGraphBuilder
+     */
+    public UpdateTracer(List<DustBlock> graph, SpatialIndex lookup) {
+        this(graph, lookup, null);
+    }
+
+    /**
+     * @param metrics counters for the iterative engine to record into, or null
+     */
+    public UpdateTracer(List<DustBlock> graph, SpatialIndex lookup, PropagationMetrics metrics) {
+        this.nodes = lookup;
+        this.lookup = lookup;
+        this.metrics = metrics;
         int[] powers = new int[graph.size()];
         for (int i = 0; i < graph.size(); i++) {
-            DustBlock b = graph.get(i);
-            lookup.put(key(b.getX(), b.getY(), b.getZ()), b);
-            powers[i] = b.getPower();
+            powers[i] = graph.get(i).getPower();
+        }
+        this.initialPowers = powers;
+    }
+
+    /**
+     * Traces a wired and ordered graph through its NodeGraph only; the
+     * recursive engine is not available. Node ids in traces are the graph's ids.
+     * @param metrics counters for the iterative engine to record into, or null
+     */
+    public UpdateTracer(NodeGraph nodes, PropagationMetrics metrics) {
+        this.nodes = nodes;
+        this.lookup = null;
+        this.metrics = metrics;
+        int[] powers = new int[nodes.size()];
+        for (int i = 0; i < powers.length; i++) {
+            powers[i] = nodes.power(i);
         }
         this.initialPowers = powers;
     }
@@ -40,12 +90,48 @@ public class UpdateTracer {
      * then returns the list of all TraceEntry records.
      */
     public List<TraceEntry> traceAll(PowerSourceSpec src) {
+        traceAll(src, new ListTraceSink(trace, this::labelOf));
+        return List.copyOf(trace);
+    }
+
+    /**
+     * Runs a full trace, streaming each update to {@code sink} instead of
+     * recording it. Node ids are NodeGraph ids, i.e. SpatialIndex ids for a DustBlock graph.
+     */
+    public void traceAll(PowerSourceSpec src, TraceSink sink) {
+        if (budget != null) budget.start();
+        for (int dir = 0; dir < SOURCE_OFFSETS.length; dir++) {
+            if (!src.powerMask()[dir]) continue;
+            int[] off = SOURCE_OFFSETS[dir];
+            int target = nodes.indexOf(src.x() + off[0], src.y() + off[1], src.z() + off[2]);
+            if (target >= 0) {
+                iterativePropagate(target, sink);
+            }
+        }
+    }
+
+    /**
+     * Limits the work of every later trace by the iterative engine; when a limit is reached the
+     * trace throws UpdateBudgetExceededException. Null or UNLIMITED removes the limits.
+     */
+    public void setBudget(UpdateBudget budget) {
+        this.budget = budget == null || budget.isUnlimited() ? null : new BudgetMeter(budget, nodes.size());
+    }
+
+    /**
+     * Reference implementation of {@link #traceAll} using one recursive call per
+     * update. Produces the same trace, but needs stack depth proportional to the
+     * longest update cascade.
+     */
+    public List<TraceEntry> traceAllRecursive(PowerSourceSpec src) {
+        if (lookup == null) {
+            throw new IllegalStateException("The recursive engine needs a DustBlock graph");
+        }
         // Seed source power and trigger each masked direction
         for (int dir = 0; dir < SOURCE_OFFSETS.length; dir++) {
             if (!src.powerMask()[dir]) continue;
             int[] off = SOURCE_OFFSETS[dir];
-            String coord = key(src.x() + off[0], src.y() + off[1], src.z() + off[2]);
-            DustBlock target = lookup.get(coord);
+            DustBlock target = lookup.get(src.x() + off[0], src.y() + off[1], src.z() + off[2]);
             if (target != null) {
                 // Trigger propagation
                 dfsPropagate("SOURCE", target);
@@ -80,6 +166,73 @@ public class UpdateTracer {
         }
     }
 
+    /**
+     * Same visiting order as {@link #dfsPropagate}, driven by an explicit stack.
+     * A frame is pushed only when its node's power changed, and popped once all
+     * of its updateTargets have been prompted.
+     */
+    private void iterativePropagate(int root, TraceSink sink) {
+        if (!pullAndRecord(TraceSink.SOURCE, root, sink, 0)) {
+            return;
+        }
+        int top = 0;
+        stackNodes[0] = root;
+        stackCursors[0] = 0;
+        if (metrics != null) metrics.depth(1);
+        while (top >= 0) {
+            int curr = stackNodes[top];
+            int cursor = stackCursors[top];
+            if (cursor == nodes.updateTargetCount(curr)) {
+                top--;
+                continue;
+            }
+            stackCursors[top] = cursor + 1;
+            int nbId = nodes.updateTarget(curr, cursor);
+            if (pullAndRecord(curr, nbId, sink, top + 1)) {
+                if (++top == stackNodes.length) {
+                    stackNodes = Arrays.copyOf(stackNodes, top * 2);
+                    stackCursors = Arrays.copyOf(stackCursors, top * 2);
+                }
+                stackNodes[top] = nbId;
+                stackCursors[top] = 0;
+                if (metrics != null) metrics.depth(top + 1);
+            }
+        }
+    }
+
+    /**
+     * Pulls the new power of node {@code id}; if it changed, applies it and reports it to the sink.
+     * @param depth number of work stack frames above the node, for the budget report
+     * @return whether the power changed
+     */
+    private boolean pullAndRecord(int fromId, int id, TraceSink sink, int depth) {
+        if (budget != null) budget.visit(id, stackNodes, depth);
+        int newPower = Math.max(nodes.maxUpstreamPower(id) - 1, 0);
+        if (newPower == nodes.power(id)) {
+            if (metrics != null) metrics.redundantVisit();
+            return false;
+        }
+        if (budget != null) budget.update(id, stackNodes, depth);
+        nodes.setPower(id, newPower);
+        if (metrics != null) metrics.update(nodes.updateTargetCount(id));
+        sink.update(fromId, id, newPower);
+        return true;
+    }
+
+    /**
+     * @return the "x:y:z" label of the node with id {@code id}
+     */
+    public String labelOf(int id) {
+        if (labels == null) {
+            labels = new String[nodes.size()];
+        }
+        String l = labels[id];
+        if (l == null) {
+            l = labels[id] = key(nodes.x(id), nodes.y(id), nodes.z(id));
+        }
+        return l;
+    }
+
     private static String key(int x, int y, int z) {
         return x + ":" + y + ":" + z;
     }
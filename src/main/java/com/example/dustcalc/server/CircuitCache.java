@@ -0,0 +1,93 @@
+package com.example.dustcalc.server;
+
+import com.example.dustcalc.cache.SnapshotCache;
+import com.example.dustcalc.input.Instance;
+import com.example.dustcalc.input.InstanceLoader;
+import com.example.dustcalc.model.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled circuits kept in memory between requests, keyed by the SHA-256 of
+ * their input file (see SnapshotCache#key), so an edited file is rebuilt and
+ * an unchanged one is served as is. The least recently used circuit is
+ * dropped once more than {@code capacity} are held. Misses can go through a
+ * SnapshotCache on disk before building from scratch. Thread-safe; two
+ * concurrent misses on the same input may both build it.
+ */
+public final class CircuitCache {
+    // Matches the snapshot key options Main uses for its default build
+    private static final String OPTIONS = "order=" + NodeOrder.INPUT + " compact=false";
+
+    private final Map<String, CompiledCircuit> circuits;
+    private final SnapshotCache snapshots;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param capacity  most circuits to keep in memory
+     * @param snapshots persisted snapshots to try on a miss, or null
+     */
+    public CircuitCache(int capacity, SnapshotCache snapshots) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        this.snapshots = snapshots;
+        this.circuits = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledCircuit> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the compiled circuit for the current contents of {@code input}
+     */
+    public CompiledCircuit get(Path input) throws IOException {
+        byte[] key = SnapshotCache.key(input, OPTIONS);
+        String hex = HexFormat.of().formatHex(key);
+        synchronized (this) {
+            CompiledCircuit circuit = circuits.get(hex);
+            if (circuit != null) {
+                hits++;
+                return circuit;
+            }
+            misses++;
+        }
+        CompiledCircuit circuit = snapshots == null ? null : snapshots.load(key);
+        if (circuit == null) {
+            circuit = build(input);
+            if (snapshots != null) {
+                try {
+                    snapshots.store(key, circuit, input, OPTIONS);
+                } catch (IOException e) {
+                    System.err.println("Warning: could not write snapshot: " + e.getMessage());
+                }
+            }
+        }
+        synchronized (this) {
+            circuits.put(hex, circuit);
+        }
+        return circuit;
+    }
+
+    /** @return "hits: n", "misses: n" and "circuits: n" lines */
+    public synchronized String summary() {
+        return "hits: " + hits + "\nmisses: " + misses + "\ncircuits: " + circuits.size() + "\n";
+    }
+
+    /** Loads, builds, orders and compiles {@code input} as Main does by default. */
+    private static CompiledCircuit build(Path input) throws IOException {
+        Instance instance = InstanceLoader.forPath(input.toString()).load();
+        SpatialIndex index = new SpatialIndex(instance.dustBlocks().size());
+        List<DustBlock> graph = new CircuitGraphBuilder().build(instance, index);
+        new UpdateOrderCalculator().applyOrdering(graph, index);
+        return CompiledCircuit.compile(index, instance.powerSources());
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.dustcalc.server;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per request kind latencies, for reporting percentiles. Each kind keeps its
+ * total count and its last {@value #WINDOW} samples; percentiles are taken
+ * over those samples by nearest rank. Thread-safe.
+ */
+public final class LatencyRecorder {
+    static final int WINDOW = 1 << 16;
+
+    private final Map<String, Samples> kinds = new TreeMap<>();
+
+    private static final class Samples {
+        final long[] nanos = new long[WINDOW];
+        long count;
+    }
+
+    /** Records one request of {@code kind} that took {@code nanos}. */
+    public synchronized void record(String kind, long nanos) {
+        Samples s = kinds.computeIfAbsent(kind, k -> new Samples());
+        s.nanos[(int) (s.count++ % WINDOW)] = nanos;
+    }
+
+    /**
+     * @return one line per kind: request count, then p50, p90, p99, p99.9 and max in milliseconds
+     */
+    public synchronized String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Samples> e : kinds.entrySet()) {
+            Samples s = e.getValue();
+            long[] sorted = Arrays.copyOf(s.nanos, (int) Math.min(s.count, WINDOW));
+            Arrays.sort(sorted);
+            sb.append(String.format("%s: n=%d p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f ms%n",
+                    e.getKey(), s.count, percentile(sorted, 50), percentile(sorted, 90),
+                    percentile(sorted, 99), percentile(sorted, 99.9), percentile(sorted, 100)));
+        }
+        return sb.toString();
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int rank = (int) Math.ceil(p / 100 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1] / 1e6;
+    }
+}
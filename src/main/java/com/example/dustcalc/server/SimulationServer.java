@@ -0,0 +1,375 @@
+package com.example.dustcalc.server;
+
+import com.example.dustcalc.cache.SnapshotCache;
+import com.example.dustcalc.metrics.PropagationMetrics;
+import com.example.dustcalc.model.*;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-running simulation daemon: keeps the JVM, Jackson and the JIT warm and
+ * compiled circuits in a CircuitCache, and answers queries over a localhost
+ * TCP port or a Unix domain socket. Every connection is served on its own
+ * virtual thread and may send any number of requests, one per line:
+ * <pre>
+ *   TRACE &lt;file&gt;    every update of switching on all sources in order: "from to power" per line
+ *   STATE &lt;file&gt;    final power per dust: "x,y,z power" per line
+ *   METRICS &lt;file&gt;  propagation counters of the same run as TRACE
+ *   STATS           latency percentiles per request kind, and cache counters
+ *   QUIT            closes the connection
+ * </pre>
+ * A reply is "OK", its lines and "END", or a single "ERR message" line. TRACE
+ * lines are written as they are produced, so a TRACE that reaches the server's
+ * UpdateBudget ends its reply with "BUDGET", the lines of its BudgetReport and
+ * "END" in place of the plain "END"; a METRICS request that reaches it gets
+ * that block instead of "OK". Positions are printed as x,y,z, and the source as SOURCE.
+ * <p>
+ * Each connection keeps the tracer of the last circuit it traced and resets it
+ * for the next request on the same circuit.
+ * <p>
+ * Any local client can connect, so files are only read from under the root
+ * directory given at startup (the working directory by default): relative
+ * paths are resolved against it, and paths that lead outside it, also through
+ * symbolic links, are refused. A Unix domain socket is created readable and
+ * writable by its owner only.
+ */
+public class SimulationServer implements AutoCloseable {
+    private static final Set<String> KINDS = Set.of("TRACE", "STATE", "METRICS", "STATS");
+
+    private final ServerSocketChannel channel;
+    // Socket file to delete on close, or null for TCP
+    private final Path socketPath;
+    private final CircuitCache circuits;
+    private final UpdateBudget budget;
+    // Real path of the directory requests may read from
+    private final Path root;
+    private final LatencyRecorder latency = new LatencyRecorder();
+    private final ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+
+    private SimulationServer(ServerSocketChannel channel, Path socketPath, CircuitCache circuits,
+                             UpdateBudget budget, Path root) throws IOException {
+        this.channel = channel;
+        this.socketPath = socketPath;
+        this.circuits = circuits;
+        this.budget = budget;
+        try {
+            this.root = root.toRealPath();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Listens on {@code port} of the loopback interface; port 0 picks a free one.
+     * @param budget limits for each traced request, or UpdateBudget.UNLIMITED
+     * @param root   directory that requested files must be in
+     */
+    public static SimulationServer tcp(int port, CircuitCache circuits, UpdateBudget budget, Path root) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        return new SimulationServer(channel, null, circuits, budget, root);
+    }
+
+    /**
+     * Listens on a Unix domain socket at {@code path}, replacing a stale socket
+     * file. On POSIX file systems the socket is made accessible to its owner only.
+     * @param budget limits for each traced request, or UpdateBudget.UNLIMITED
+     * @param root   directory that requested files must be in
+     */
+    public static SimulationServer unix(Path path, CircuitCache circuits, UpdateBudget budget, Path root) throws IOException {
+        Files.deleteIfExists(path);
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.bind(UnixDomainSocketAddress.of(path));
+            if (Files.getFileStore(path).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+            }
+        } catch (IOException e) {
+            channel.close();
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return new SimulationServer(channel, path, circuits, budget, root);
+    }
+
+    /** @return the address the server listens on */
+    public SocketAddress address() throws IOException {
+        return channel.getLocalAddress();
+    }
+
+    /**
+     * Accepts connections until the server is closed.
+     */
+    public void serve() throws IOException {
+        try {
+            while (true) {
+                SocketChannel client = channel.accept();
+                threads.execute(() -> connection(client));
+            }
+        } catch (ClosedChannelException e) {
+            // close() was called
+        }
+    }
+
+    /** @return the latency percentiles of every request kind served so far */
+    public String latencySummary() {
+        return latency.summary();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        threads.shutdownNow();
+        if (socketPath != null) {
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    private void connection(SocketChannel client) {
+        Session session = new Session();
+        try (client;
+             BufferedReader in = new BufferedReader(Channels.newReader(client, StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new BufferedWriter(Channels.newWriter(client, StandardCharsets.UTF_8)))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                long start = System.nanoTime();
+                String[] words = line.trim().split("\\s+", 2);
+                String kind = words[0].toUpperCase(Locale.ROOT);
+                if (kind.equals("QUIT")) {
+                    break;
+                }
+                try {
+                    handle(kind, words.length > 1 ? words[1] : null, session, out);
+                } catch (NoSuchFileException e) {
+                    out.println("ERR No such file: " + e.getMessage());
+                } catch (Exception e) {
+                    out.println("ERR " + oneLine(e));
+                }
+                out.flush();
+                // Unknown words share one entry, so clients cannot grow the recorder
+                latency.record(KINDS.contains(kind) ? kind : "UNKNOWN", System.nanoTime() - start);
+            }
+        } catch (IOException e) {
+            // The client went away
+        }
+    }
+
+    private void handle(String kind, String arg, Session session, PrintWriter out) throws IOException {
+        switch (kind) {
+            case "TRACE" -> {
+                CompiledCircuit circuit = circuits.get(path(arg));
+                CompiledTracer tracer = session.tracer(circuit, budget);
+                TraceSink sink = (from, to, power) -> {
+                    if (from == TraceSink.SOURCE) {
+                        out.print("SOURCE");
+                    } else {
+                        printCoords(out, circuit, from);
+                    }
+                    out.print(' ');
+                    printCoords(out, circuit, to);
+                    out.print(' ');
+                    out.println(power);
+                };
+                out.println("OK");
+                if (trace(circuit, tracer, sink, out)) {
+                    out.println("END");
+                }
+            }
+            case "STATE" -> {
+                CompiledCircuit circuit = circuits.get(path(arg));
+                byte[] powers = new SteadyStateSolver(circuit).solve();
+                StringBuilder sb = new StringBuilder();
+                for (int id = 0; id < circuit.nodeCount(); id++) {
+                    sb.append(coords(circuit, id)).append(' ').append(powers[id]).append('\n');
+                }
+                reply(out, sb);
+            }
+            case "METRICS" -> {
+                CompiledCircuit circuit = circuits.get(path(arg));
+                CompiledTracer tracer = session.tracer(circuit, budget);
+                if (trace(circuit, tracer, new CountingTraceSink(), out)) {
+                    reply(out, new StringBuilder(session.metrics.summary()));
+                }
+            }
+            case "STATS" -> reply(out, new StringBuilder(latency.summary()).append(circuits.summary()));
+            default -> throw new IllegalArgumentException("Unknown request: " + kind);
+        }
+    }
+
+    /**
+     * Switches on every source in order, as Main does, on a tracer just reset by Session#tracer.
+     * @return false if the budget stopped it; the BUDGET block is written then
+     */
+    private boolean trace(CompiledCircuit circuit, CompiledTracer tracer, TraceSink sink, PrintWriter out) {
+        try {
+            for (int s = 0; s < circuit.sourceCount(); s++) {
+                tracer.toggle(s, circuit.sourcePower(s), sink);
+            }
+            return true;
+        } catch (UpdateBudgetExceededException e) {
+            out.println("BUDGET");
+            out.print(e.getReport().summary(id -> coords(circuit, id)));
+            out.println("END");
+            return false;
+        }
+    }
+
+    /**
+     * Resolves a requested file against the root.
+     * @throws IllegalArgumentException if it is missing or outside the root
+     */
+    private Path path(String arg) throws IOException {
+        if (arg == null || arg.isBlank()) {
+            throw new IllegalArgumentException("Missing input file");
+        }
+        Path file = root.resolve(arg.trim()).normalize();
+        if (file.startsWith(root)) {
+            // Checked again once symbolic links are resolved, so a link cannot lead out of the root
+            file = file.toRealPath();
+        }
+        if (!file.startsWith(root)) {
+            throw new IllegalArgumentException("Not under the server root: " + arg.trim());
+        }
+        return file;
+    }
+
+    /** @return the exception's message on one line, or its type if it has none */
+    private static String oneLine(Exception e) {
+        String message = e.getMessage();
+        if (message == null || message.isBlank()) {
+            return e.getClass().getSimpleName();
+        }
+        return message.strip().replaceAll("\\s*\\R\\s*", " ");
+    }
+
+    private static void reply(PrintWriter out, StringBuilder body) {
+        out.println("OK");
+        out.print(body);
+        out.println("END");
+    }
+
+    private static String coords(CompiledCircuit circuit, int id) {
+        return circuit.x(id) + "," + circuit.y(id) + "," + circuit.z(id);
+    }
+
+    /** Prints x,y,z of {@code id} without building a string for it. */
+    private static void printCoords(PrintWriter out, CompiledCircuit circuit, int id) {
+        out.print(circuit.x(id));
+        out.print(',');
+        out.print(circuit.y(id));
+        out.print(',');
+        out.print(circuit.z(id));
+    }
+
+    /**
+     * Per-connection state: the tracer of the last circuit traced, so that
+     * repeated requests on one circuit skip building a tracer and its level counts.
+     */
+    private static final class Session {
+        // Filled by every trace; cleared before each request
+        final PropagationMetrics metrics = new PropagationMetrics();
+        private CompiledCircuit circuit;
+        private CompiledTracer tracer;
+
+        /**
+         * @return a tracer for {@code circuit} in its initial state, with cleared metrics;
+         *         the previous one when the circuit is the same
+         */
+        CompiledTracer tracer(CompiledCircuit circuit, UpdateBudget budget) {
+            if (circuit != this.circuit) {
+                this.tracer = new CompiledTracer(circuit, metrics);
+                this.tracer.setBudget(budget);
+                this.circuit = circuit;
+            } else {
+                tracer.reset();
+            }
+            metrics.reset();
+            return tracer;
+        }
+    }
+
+    /**
+     * Starts a server and serves until the JVM is stopped, then prints the
+     * latency percentiles to stderr.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = 7878;
+        Path socket = null;
+        int cacheSize = 64;
+        String cacheDir = null;
+        Path root = Path.of("");
+        long maxVisits = 0;
+        long maxTimeMs = 0;
+        CircuitCache circuits = null;
+        UpdateBudget budget = null;
+        // Malformed values fall through to the usage text, as in Main
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--port") && i + 1 < args.length) {
+                    port = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--socket") && i + 1 < args.length) {
+                    socket = Path.of(args[++i]);
+                } else if (args[i].equals("--root") && i + 1 < args.length) {
+                    root = Path.of(args[++i]);
+                } else if (args[i].equals("--cache-size") && i + 1 < args.length) {
+                    cacheSize = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--cache-dir") && i + 1 < args.length) {
+                    cacheDir = args[++i];
+                } else if (args[i].equals("--max-visits") && i + 1 < args.length) {
+                    maxVisits = Long.parseLong(args[++i]);
+                } else if (args[i].equals("--max-time-ms") && i + 1 < args.length) {
+                    maxTimeMs = Long.parseLong(args[++i]);
+                } else {
+                    usage();
+                }
+            }
+            circuits = new CircuitCache(cacheSize, cacheDir == null ? null : new SnapshotCache(Path.of(cacheDir)));
+            budget = new UpdateBudget(0, maxVisits, Duration.ofMillis(maxTimeMs), 0);
+        } catch (IllegalArgumentException e) {
+            usage();
+        }
+        SimulationServer server = socket == null
+                ? tcp(port, circuits, budget, root)
+                : unix(socket, circuits, budget, root);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                // Exiting anyway
+            }
+            System.err.print(server.latencySummary());
+        }));
+        System.err.println("Listening on " + server.address() + ", serving files under " + server.root);
+        server.serve();
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java -jar dustcalc.jar --serve [--port <n>|--socket <path>] [--root <dir>]"
+                + " [--cache-size <n>] [--cache-dir <dir>] [--max-visits <n>] [--max-time-ms <n>]");
+        System.exit(1);
+    }
+}
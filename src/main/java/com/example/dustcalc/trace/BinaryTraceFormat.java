@@ -0,0 +1,29 @@
+package com.example.dustcalc.trace;
+
+/**
+ * Layout of a binary trace file (all values big-endian):
+ * <pre>
+ *   int   magic        "DCTR"
+ *   int   version
+ *   long  entryCount   patched when the writer is closed
+ *   int   nodeCount
+ *   nodeCount × (int x, int y, int z)   node id → coordinate table
+ *   entryCount × (int from, int to, byte power)
+ * </pre>
+ * Records are fixed width, so entry N starts at {@code headerSize + N * RECORD_BYTES}.
+ * A {@code from} of -1 marks an update triggered by the power source.
+ */
+final class BinaryTraceFormat {
+    static final int MAGIC = 0x44435452;
+    static final int VERSION = 1;
+    static final int ENTRY_COUNT_OFFSET = 8;
+    static final int FIXED_HEADER_BYTES = 20;
+    static final int NODE_BYTES = 12;
+    static final int RECORD_BYTES = 9;
+
+    private BinaryTraceFormat() {}
+
+    static long headerSize(int nodeCount) {
+        return FIXED_HEADER_BYTES + (long) nodeCount * NODE_BYTES;
+    }
+}
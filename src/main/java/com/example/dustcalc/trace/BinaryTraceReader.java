@@ -0,0 +1,121 @@
+package com.example.dustcalc.trace;
+
+import com.example.dustcalc.model.TraceSink;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.example.dustcalc.trace.BinaryTraceFormat.*;
+
+/**
+ * Memory-maps a binary trace file written by BinaryTraceWriter.
+ * Entries are read in place, so any entry can be accessed by index
+ * and filtered without decoding the rest of the file.
+ */
+public class BinaryTraceReader implements Closeable {
+    // Records per mapped chunk; keeps each mapping below 2 GiB
+    private static final long CHUNK_RECORDS = (1L << 30) / RECORD_BYTES;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] chunks;
+    private final int nodeCount;
+    private final long entryCount;
+
+    public BinaryTraceReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer fixed = channel.map(FileChannel.MapMode.READ_ONLY, 0, FIXED_HEADER_BYTES);
+            if (fixed.getInt(0) != MAGIC) {
+                throw new IOException("Not a binary trace file: " + path);
+            }
+            if (fixed.getInt(4) != VERSION) {
+                throw new IOException("Unsupported trace version " + fixed.getInt(4) + ": " + path);
+            }
+            this.entryCount = fixed.getLong(ENTRY_COUNT_OFFSET);
+            this.nodeCount = fixed.getInt(16);
+            long headerSize = headerSize(nodeCount);
+            if (channel.size() < headerSize + entryCount * RECORD_BYTES) {
+                throw new IOException("Truncated trace file: " + path);
+            }
+            this.header = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerSize);
+            int chunkCount = (int) ((entryCount + CHUNK_RECORDS - 1) / CHUNK_RECORDS);
+            this.chunks = new MappedByteBuffer[chunkCount];
+            for (int c = 0; c < chunkCount; c++) {
+                long first = c * CHUNK_RECORDS;
+                long records = Math.min(CHUNK_RECORDS, entryCount - first);
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        headerSize + first * RECORD_BYTES, records * RECORD_BYTES);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getNodeCount() { return nodeCount; }
+    public long getEntryCount() { return entryCount; }
+
+    // Node coordinate table
+    public int nodeX(int id) { return header.getInt(nodeOffset(id)); }
+    public int nodeY(int id) { return header.getInt(nodeOffset(id) + 4); }
+    public int nodeZ(int id) { return header.getInt(nodeOffset(id) + 8); }
+
+    // Entry N, in trace order
+    public int fromId(long n) { return chunk(n).getInt(recordOffset(n)); }
+    public int toId(long n) { return chunk(n).getInt(recordOffset(n) + 4); }
+    public int power(long n) { return chunk(n).get(recordOffset(n) + 8); }
+
+    /**
+     * Replays entries [first, last) into {@code sink}.
+     */
+    public void replay(long first, long last, TraceSink sink) {
+        for (long n = first; n < last; n++) {
+            MappedByteBuffer c = chunk(n);
+            int off = recordOffset(n);
+            sink.update(c.getInt(off), c.getInt(off + 4), c.get(off + 8));
+        }
+    }
+
+    /**
+     * Replays only the entries that update {@code nodeId} or are prompted by it.
+     */
+    public void filterByNode(int nodeId, TraceSink sink) {
+        for (long n = 0; n < entryCount; n++) {
+            MappedByteBuffer c = chunk(n);
+            int off = recordOffset(n);
+            int from = c.getInt(off);
+            int to = c.getInt(off + 4);
+            if (from == nodeId || to == nodeId) {
+                sink.update(from, to, c.get(off + 8));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int nodeOffset(int id) {
+        if (id < 0 || id >= nodeCount) {
+            throw new IndexOutOfBoundsException(id);
+        }
+        return FIXED_HEADER_BYTES + id * NODE_BYTES;
+    }
+
+    private MappedByteBuffer chunk(long n) {
+        if (n < 0 || n >= entryCount) {
+            throw new IndexOutOfBoundsException("entry " + n + " of " + entryCount);
+        }
+        return chunks[(int) (n / CHUNK_RECORDS)];
+    }
+
+    private static int recordOffset(long n) {
+        return (int) (n % CHUNK_RECORDS) * RECORD_BYTES;
+    }
+}
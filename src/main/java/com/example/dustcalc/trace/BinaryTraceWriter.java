@@ -0,0 +1,91 @@
+package com.example.dustcalc.trace;
+
+import com.example.dustcalc.model.CompiledCircuit;
+import com.example.dustcalc.model.TraceSink;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.example.dustcalc.trace.BinaryTraceFormat.*;
+
+/**
+ * A TraceSink that streams updates into a binary trace file (see BinaryTraceFormat)
+ * through a buffered FileChannel. The entry count is written on {@link #close()}.
+ */
+public class BinaryTraceWriter implements TraceSink, Closeable {
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private long entries;
+
+    /**
+     * Creates (or truncates) {@code path} and writes the header with the
+     * coordinates of every node of {@code circuit}.
+     */
+    public BinaryTraceWriter(Path path, CompiledCircuit circuit) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(0L).putInt(circuit.nodeCount());
+            for (int id = 0; id < circuit.nodeCount(); id++) {
+                ensureRoom(NODE_BYTES);
+                buffer.putInt(circuit.x(id)).putInt(circuit.y(id)).putInt(circuit.z(id));
+            }
+        } catch (IOException | RuntimeException e) {
+            // The caller never gets the writer to close
+            try {
+                channel.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void update(int fromId, int toId, int power) {
+        try {
+            ensureRoom(RECORD_BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.putInt(fromId).putInt(toId).put((byte) power);
+        entries++;
+    }
+
+    /** @return number of entries written so far */
+    public long getEntryCount() {
+        return entries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            ByteBuffer count = ByteBuffer.allocate(Long.BYTES).putLong(0, entries);
+            channel.write(count, ENTRY_COUNT_OFFSET);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void ensureRoom(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.dustcalc.trace;
+
+import com.example.dustcalc.model.CompiledCircuit;
+import com.example.dustcalc.model.TraceSink;
+
+import java.io.PrintWriter;
+
+/**
+ * A TraceSink that prints the human-readable trace log as updates arrive.
+ * Nodes are printed as {@code [id] (x,y,z)} with 1-based ids; labels are built
+ * once per node and the running power array is kept as an int[].
+ */
+public class TraceLogPrinter implements TraceSink {
+
+    /** How much of the global power state is printed alongside each entry. */
+    public enum Mode {
+        /** Every entry followed by the powers of all dusts. */
+        FULL,
+        /** Only the changed node. */
+        DELTA,
+        /** Only the changed node, plus the powers of all dusts every N entries. */
+        PERIODIC
+    }
+
+    private final PrintWriter out;
+    private final CompiledCircuit circuit;
+    private final Mode mode;
+    private final int snapshotEvery;
+    private final int[] powers;
+    private final String[] labels;
+    private long index;
+
+    /**
+     * @param out           destination; not flushed or closed by this printer
+     * @param circuit       circuit being traced, for ids, coordinates and initial powers
+     * @param mode          output mode
+     * @param snapshotEvery snapshot interval for {@link Mode#PERIODIC}
+     */
+    public TraceLogPrinter(PrintWriter out, CompiledCircuit circuit, Mode mode, int snapshotEvery) {
+        if (mode == Mode.PERIODIC && snapshotEvery <= 0) {
+            throw new IllegalArgumentException("snapshotEvery must be positive: " + snapshotEvery);
+        }
+        this.out = out;
+        this.circuit = circuit;
+        this.mode = mode;
+        this.snapshotEvery = snapshotEvery;
+        this.powers = new int[circuit.nodeCount()];
+        byte[] initial = circuit.initialPowers();
+        for (int i = 0; i < powers.length; i++) {
+            powers[i] = initial[i];
+        }
+        this.labels = new String[circuit.nodeCount()];
+    }
+
+    @Override
+    public void update(int fromId, int toId, int power) {
+        powers[toId] = power;
+        out.print(index);
+        out.print(":\t");
+        printPadded(fromId == SOURCE ? "[SOURCE]" : label(fromId), 20);
+        out.print("\t→\t");
+        printPadded(label(toId), 16);
+        out.print("\t@ power=");
+        if (power < 10) out.print('0');
+        out.print(power);
+        if (mode == Mode.FULL) {
+            out.print("    ");
+            printPowers();
+        }
+        out.println();
+        index++;
+        if (mode == Mode.PERIODIC && index % snapshotEvery == 0) {
+            out.print("snapshot@");
+            out.print(index);
+            out.print(":\t");
+            printPowers();
+            out.println();
+        }
+    }
+
+    private String label(int id) {
+        String l = labels[id];
+        if (l == null) {
+            l = labels[id] = "[" + (id + 1) + "] (" + circuit.x(id) + "," + circuit.y(id) + "," + circuit.z(id) + ")";
+        }
+        return l;
+    }
+
+    private void printPadded(String s, int width) {
+        out.print(s);
+        for (int i = s.length(); i < width; i++) {
+            out.print(' ');
+        }
+    }
+
+    // Same layout as Arrays.toString(int[])
+    private void printPowers() {
+        out.print('[');
+        for (int i = 0; i < powers.length; i++) {
+            if (i > 0) out.print(", ");
+            out.print(powers[i]);
+        }
+        out.print(']');
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.dustcalc.model;
+
+import com.example.dustcalc.input.BlockingBlockSpec;
+import com.example.dustcalc.input.DustBlockSpec;
+import com.example.dustcalc.input.Instance;
+import com.example.dustcalc.input.PowerSourceSpec;
+import com.example.dustcalc.input.TransparentBlockSpec;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs random edit sequences through a CircuitEditor and checks after every
+ * edit that each dust's power and update targets match a full rebuild of the
+ * edited circuit. Node ids differ between the two, so dusts and targets are
+ * compared by position.
+ */
+class CircuitEditorTest {
+    private static final int SIZE_X = 7;
+    private static final int SIZE_Y = 4;
+    private static final int SIZE_Z = 7;
+
+    private enum Kind { DUST, BLOCKING, TRANSPARENT, SOURCE }
+
+    @Test
+    void randomEditsMatchFullRebuild() {
+        for (long seed = 0; seed < 40; seed++) {
+            Random random = new Random(seed);
+            Map<String, Kind> cells = new LinkedHashMap<>();
+            Map<String, Integer> powers = new LinkedHashMap<>();
+            List<PowerSourceSpec> sources = new ArrayList<>();
+            for (int s = 0; s < 2; s++) {
+                int[] p = emptyCell(random, cells);
+                boolean[] mask = new boolean[6];
+                for (int dir = 0; dir < mask.length; dir++) {
+                    mask[dir] = random.nextBoolean();
+                }
+                sources.add(new PowerSourceSpec(p[0], p[1], p[2], 1 + random.nextInt(15), mask));
+                cells.put(key(p[0], p[1], p[2]), Kind.SOURCE);
+            }
+            for (int i = 0; i < 60; i++) {
+                int[] p = emptyCell(random, cells);
+                Kind kind = Kind.values()[random.nextInt(3)];
+                cells.put(key(p[0], p[1], p[2]), kind);
+                if (kind == Kind.DUST) {
+                    powers.put(key(p[0], p[1], p[2]), random.nextInt(16));
+                }
+            }
+
+            CircuitEditor editor = new CircuitEditor(instance(cells, powers, sources));
+            assertSameGraph(editor, instance(cells, powers, sources), "seed " + seed + " initial");
+            for (int step = 0; step < 150; step++) {
+                edit(random, editor, cells, powers);
+                assertSameGraph(editor, instance(cells, powers, sources), "seed " + seed + " step " + step);
+            }
+        }
+    }
+
+    /** Adds a random block to an empty cell, or removes a random existing one. */
+    private static void edit(Random random, CircuitEditor editor, Map<String, Kind> cells, Map<String, Integer> powers) {
+        List<String> removable = new ArrayList<>();
+        cells.forEach((k, kind) -> {
+            if (kind != Kind.SOURCE) removable.add(k);
+        });
+        if (removable.isEmpty() || random.nextBoolean()) {
+            int[] p = emptyCell(random, cells);
+            String k = key(p[0], p[1], p[2]);
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    int power = random.nextInt(16);
+                    editor.addDust(p[0], p[1], p[2], power);
+                    cells.put(k, Kind.DUST);
+                    powers.put(k, power);
+                }
+                case 1 -> {
+                    editor.addBlocking(p[0], p[1], p[2]);
+                    cells.put(k, Kind.BLOCKING);
+                }
+                default -> {
+                    editor.addTransparent(p[0], p[1], p[2]);
+                    cells.put(k, Kind.TRANSPARENT);
+                }
+            }
+        } else {
+            String k = removable.get(random.nextInt(removable.size()));
+            int[] p = parse(k);
+            switch (cells.remove(k)) {
+                case DUST -> {
+                    editor.removeDust(p[0], p[1], p[2]);
+                    powers.remove(k);
+                }
+                case BLOCKING -> editor.removeBlocking(p[0], p[1], p[2]);
+                default -> editor.removeTransparent(p[0], p[1], p[2]);
+            }
+        }
+    }
+
+    private static void assertSameGraph(CircuitEditor editor, Instance instance, String where) {
+        SpatialIndex index = new SpatialIndex(instance.dustBlocks().size());
+        List<DustBlock> rebuilt = new CircuitGraphBuilder().build(instance, index);
+        new UpdateOrderCalculator().applyOrdering(rebuilt, index);
+        assertEquals(describe(rebuilt), describe(editor.graph()), where);
+    }
+
+    /** Maps each dust's position to its power targets and update targets, by position, in list order. */
+    private static Map<String, String> describe(List<DustBlock> graph) {
+        Map<String, String> lists = new TreeMap<>();
+        for (DustBlock b : graph) {
+            List<String> power = new ArrayList<>();
+            for (PowerBlock t : b.getPowerTargets()) {
+                power.add(key(t.getX(), t.getY(), t.getZ()));
+            }
+            List<String> update = new ArrayList<>();
+            for (DustBlock t : b.getUpdateTargets()) {
+                update.add(key(t.getX(), t.getY(), t.getZ()));
+            }
+            lists.put(key(b.getX(), b.getY(), b.getZ()), "power=" + power + " update=" + update);
+        }
+        return lists;
+    }
+
+    private static Instance instance(Map<String, Kind> cells, Map<String, Integer> powers, List<PowerSourceSpec> sources) {
+        List<DustBlockSpec> dust = new ArrayList<>();
+        List<TransparentBlockSpec> transparent = new ArrayList<>();
+        List<BlockingBlockSpec> blocking = new ArrayList<>();
+        cells.forEach((k, kind) -> {
+            int[] p = parse(k);
+            switch (kind) {
+                case DUST -> dust.add(new DustBlockSpec(p[0], p[1], p[2], powers.get(k)));
+                case BLOCKING -> blocking.add(new BlockingBlockSpec(p[0], p[1], p[2], "stone"));
+                case TRANSPARENT -> transparent.add(new TransparentBlockSpec(p[0], p[1], p[2], "glass"));
+                case SOURCE -> { }
+            }
+        });
+        return new Instance(null, sources, dust, transparent, blocking);
+    }
+
+    private static int[] emptyCell(Random random, Map<String, Kind> cells) {
+        while (true) {
+            int x = random.nextInt(SIZE_X);
+            int y = random.nextInt(SIZE_Y);
+            int z = random.nextInt(SIZE_Z);
+            if (!cells.containsKey(key(x, y, z))) {
+                return new int[]{x, y, z};
+            }
+        }
+    }
+
+    private static String key(int x, int y, int z) {
+        return x + "," + y + "," + z;
+    }
+
+    private static int[] parse(String key) {
+        String[] parts = key.split(",");
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2])};
+    }
+}
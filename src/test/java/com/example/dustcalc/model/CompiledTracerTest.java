@@ -0,0 +1,103 @@
+package com.example.dustcalc.model;
+
+import com.example.dustcalc.input.BlockingBlockSpec;
+import com.example.dustcalc.input.DustBlockSpec;
+import com.example.dustcalc.input.Instance;
+import com.example.dustcalc.input.PowerSourceSpec;
+import com.example.dustcalc.input.TransparentBlockSpec;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Switches the sources of random multi-source circuits on one by one, with
+ * CompiledTracer#toggle and with UpdateTracer on the DustBlock graph the
+ * circuit was compiled from, and checks that every source's trace and the
+ * powers it leaves behind match. Sources not yet switched on are at 0 in both.
+ */
+class CompiledTracerTest {
+
+    @Test
+    void multiSourceTogglesMatchUpdateTracer() {
+        for (long seed = 0; seed < 150; seed++) {
+            Random random = new Random(seed);
+            Instance instance = randomInstance(random);
+            SpatialIndex index = new SpatialIndex(instance.dustBlocks().size());
+            List<DustBlock> graph = new CircuitGraphBuilder().build(instance, index);
+            new UpdateOrderCalculator().applyOrdering(graph, index);
+            CompiledCircuit circuit = CompiledCircuit.compile(index, instance.powerSources());
+            CompiledTracer compiled = new CompiledTracer(circuit);
+            UpdateTracer reference = new UpdateTracer(graph, index);
+
+            // The heap graph's sources hold their final power from the start; switch them off
+            Map<PowerSourceSpec, PowerSourceBlock> blocks = new IdentityHashMap<>();
+            for (DustBlock b : graph) {
+                for (PowerBlock up : b.getPowerTargets()) {
+                    if (up instanceof PowerSourceBlock src) {
+                        src.setPower(0);
+                        blocks.put(src.getSpec(), src);
+                    }
+                }
+            }
+
+            List<PowerSourceSpec> sources = instance.powerSources();
+            for (int s = 0; s < sources.size(); s++) {
+                PowerSourceSpec spec = sources.get(s);
+                StringBuilder expected = new StringBuilder();
+                PowerSourceBlock block = blocks.get(spec);
+                if (block != null) {
+                    block.setPower(spec.finalPower());
+                }
+                reference.traceAll(spec, (from, to, power) -> expected.append(from).append(' ')
+                        .append(to).append(' ').append(power).append('\n'));
+                StringBuilder actual = new StringBuilder();
+                compiled.toggle(s, circuit.sourcePower(s), (from, to, power) -> actual.append(from).append(' ')
+                        .append(to).append(' ').append(power).append('\n'));
+
+                String where = "seed " + seed + " source " + s;
+                assertEquals(expected.toString(), actual.toString(), where);
+                for (int id = 0; id < circuit.nodeCount(); id++) {
+                    assertEquals(index.power(id), compiled.getPower(id), where + " node " + id);
+                }
+            }
+        }
+    }
+
+    /** Dust, obstacles and 2-4 sources of random power in a small box, so sources compete for dust. */
+    private static Instance randomInstance(Random random) {
+        Set<String> used = new HashSet<>();
+        List<PowerSourceSpec> sources = new ArrayList<>();
+        List<DustBlockSpec> dust = new ArrayList<>();
+        List<TransparentBlockSpec> transparent = new ArrayList<>();
+        List<BlockingBlockSpec> blocking = new ArrayList<>();
+        int sourceCount = 2 + random.nextInt(3);
+        for (int i = 0; i < 100; i++) {
+            int x = random.nextInt(9);
+            int y = random.nextInt(3);
+            int z = random.nextInt(9);
+            if (!used.add(x + "," + y + "," + z)) continue;
+            if (sources.size() < sourceCount) {
+                boolean[] mask = new boolean[6];
+                for (int dir = 0; dir < mask.length; dir++) {
+                    mask[dir] = random.nextInt(3) > 0;
+                }
+                sources.add(new PowerSourceSpec(x, y, z, 1 + random.nextInt(15), mask));
+                continue;
+            }
+            switch (random.nextInt(6)) {
+                case 0 -> blocking.add(new BlockingBlockSpec(x, y, z, "stone"));
+                case 1 -> transparent.add(new TransparentBlockSpec(x, y, z, "glass"));
+                default -> dust.add(new DustBlockSpec(x, y, z, 0));
+            }
+        }
+        return new Instance(null, sources, dust, transparent, blocking);
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.dustcalc.model;
+
+import com.example.dustcalc.input.BlockingBlockSpec;
+import com.example.dustcalc.input.DustBlockSpec;
+import com.example.dustcalc.input.Instance;
+import com.example.dustcalc.input.PowerSourceSpec;
+import com.example.dustcalc.input.StreamingInstanceLoader;
+import com.example.dustcalc.input.TransparentBlockSpec;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Builds random circuits both as DustBlock graphs and with
+ * CircuitGraphBuilder#buildOffHeap, in direct memory and in mapped files, and
+ * checks that update targets and traces match position by position.
+ */
+class OffHeapNodeStoreTest {
+
+    @Test
+    void matchesHeapGraph() throws IOException {
+        Path dir = Files.createTempDirectory("offheap");
+        try {
+            for (long seed = 0; seed < 60; seed++) {
+                Instance instance = randomInstance(new Random(seed));
+                SpatialIndex index = new SpatialIndex(instance.dustBlocks().size());
+                List<DustBlock> graph = new CircuitGraphBuilder().build(instance, index);
+                new UpdateOrderCalculator().applyOrdering(graph, index);
+                String expectedTargets = updateTargets(index);
+                String expectedTrace = trace(new UpdateTracer(graph, index), index, instance);
+
+                for (Path storeDir : new Path[]{null, dir}) {
+                    try (OffHeapNodeStore store = new CircuitGraphBuilder().buildOffHeap(instance, storeDir)) {
+                        assertEquals(expectedTargets, updateTargets(store), "seed " + seed + " dir " + storeDir);
+                        assertEquals(expectedTrace, trace(new UpdateTracer(store, null), store, instance),
+                                "seed " + seed + " dir " + storeDir);
+                    }
+                }
+            }
+            assertEquals(0L, fileCount(dir), "backing files left after close");
+        } finally {
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    void failedBuildReleasesStore() throws IOException {
+        Path dir = Files.createTempDirectory("offheap");
+        try {
+            Instance noSource = new Instance(null, List.of(),
+                    List.of(new DustBlockSpec(0, 0, 0, 3)), List.of(), List.of());
+            assertThrows(IllegalArgumentException.class, () -> new CircuitGraphBuilder().buildOffHeap(noSource, dir));
+            // Fails in the store itself, past the loaders' own checks
+            StreamingInstanceLoader badPower = handler -> {
+                handler.powerSource(new PowerSourceSpec(0, 0, 0, 15, new boolean[6]));
+                handler.dustBlock(1, 0, 0, 16);
+            };
+            assertThrows(IllegalArgumentException.class, () -> new CircuitGraphBuilder().buildOffHeap(badPower, dir));
+            assertEquals(0L, fileCount(dir), "backing files left after a failed build");
+        } finally {
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /** Every source switched on in order; each entry as "from to power" labels, then the final powers. */
+    private static String trace(UpdateTracer tracer, NodeGraph nodes, Instance instance) {
+        StringBuilder sb = new StringBuilder();
+        for (PowerSourceSpec source : instance.powerSources()) {
+            tracer.traceAll(source, (from, to, power) -> sb
+                    .append(from == TraceSink.SOURCE ? "SOURCE" : label(nodes, from)).append(' ')
+                    .append(label(nodes, to)).append(' ').append(power).append('\n'));
+        }
+        Map<String, Integer> powers = new TreeMap<>();
+        for (int id = 0; id < nodes.size(); id++) {
+            powers.put(label(nodes, id), nodes.power(id));
+        }
+        return sb.append(powers).toString();
+    }
+
+    private static String updateTargets(NodeGraph nodes) {
+        Map<String, List<String>> lists = new TreeMap<>();
+        for (int id = 0; id < nodes.size(); id++) {
+            List<String> targets = new ArrayList<>();
+            for (int i = 0; i < nodes.updateTargetCount(id); i++) {
+                targets.add(label(nodes, nodes.updateTarget(id, i)));
+            }
+            lists.put(label(nodes, id), targets);
+        }
+        return lists.toString();
+    }
+
+    private static String label(NodeGraph nodes, int id) {
+        return nodes.x(id) + ":" + nodes.y(id) + ":" + nodes.z(id);
+    }
+
+    /** Dust, obstacles and 1-3 sources around a region corner, so dusts fall into several regions. */
+    private static Instance randomInstance(Random random) {
+        Set<String> used = new HashSet<>();
+        List<PowerSourceSpec> sources = new ArrayList<>();
+        List<DustBlockSpec> dust = new ArrayList<>();
+        List<TransparentBlockSpec> transparent = new ArrayList<>();
+        List<BlockingBlockSpec> blocking = new ArrayList<>();
+        int sourceCount = 1 + random.nextInt(3);
+        for (int i = 0; i < 120; i++) {
+            int x = 12 + random.nextInt(8);
+            int y = -2 + random.nextInt(4);
+            int z = -4 + random.nextInt(8);
+            if (!used.add(x + "," + y + "," + z)) continue;
+            if (sources.size() < sourceCount) {
+                boolean[] mask = new boolean[6];
+                for (int dir = 0; dir < mask.length; dir++) {
+                    mask[dir] = random.nextBoolean();
+                }
+                sources.add(new PowerSourceSpec(x, y, z, 15, mask));
+                continue;
+            }
+            switch (random.nextInt(5)) {
+                case 0 -> blocking.add(new BlockingBlockSpec(x, y, z, "stone"));
+                case 1 -> transparent.add(new TransparentBlockSpec(x, y, z, "glass"));
+                default -> dust.add(new DustBlockSpec(x, y, z, 0));
+            }
+        }
+        return new Instance(null, sources, dust, transparent, blocking);
+    }
+
+    private static long fileCount(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+}
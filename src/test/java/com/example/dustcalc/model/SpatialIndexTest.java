@@ -0,0 +1,65 @@
+package com.example.dustcalc.model;
+
+import org.junit.jupiter.api.Test;
+
+import static com.example.dustcalc.model.SpatialIndex.MAX_XZ;
+import static com.example.dustcalc.model.SpatialIndex.MAX_Y;
+import static com.example.dustcalc.model.SpatialIndex.MIN_XZ;
+import static com.example.dustcalc.model.SpatialIndex.MIN_Y;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that positions at the edges of the packed coordinate range keep keys
+ * of their own, and that positions beyond it are rejected on insertion and
+ * never found by a lookup, instead of aliasing a position inside the range.
+ */
+class SpatialIndexTest {
+
+    @Test
+    void edgesOfTheRangeStayApart() {
+        SpatialIndex index = new SpatialIndex();
+        int[][] corners = {
+                {MIN_XZ, MIN_Y, MIN_XZ}, {MAX_XZ, MAX_Y, MAX_XZ}, {MIN_XZ, MAX_Y, MAX_XZ}, {MAX_XZ, MIN_Y, MIN_XZ}
+        };
+        for (int[] p : corners) {
+            index.put(new DustBlock(p[0], p[1], p[2], 0));
+        }
+        assertEquals(corners.length, index.size());
+        for (int id = 0; id < corners.length; id++) {
+            int[] p = corners[id];
+            assertEquals(id, index.indexOf(p[0], p[1], p[2]));
+        }
+        // One step past an edge would wrap onto another corner
+        assertEquals(-1, index.indexOf(MAX_XZ + 1, MAX_Y, MAX_XZ));
+        assertEquals(-1, index.indexOf(MAX_XZ, MIN_Y - 1, MAX_XZ));
+        assertEquals(-1, index.indexOf(MAX_XZ, MAX_Y + 1, MIN_XZ));
+        assertEquals(-1, index.indexOf(MIN_XZ, MIN_Y, MAX_XZ + 1));
+    }
+
+    @Test
+    void rejectsPositionsOutOfRange() {
+        int[][] outside = {
+                {MAX_XZ + 1, 0, 0}, {MIN_XZ - 1, 0, 0}, {0, MAX_Y + 1, 0}, {0, MIN_Y - 1, 0},
+                {0, 0, MAX_XZ + 1}, {0, 0, MIN_XZ - 1}, {Integer.MAX_VALUE, 0, 0}, {0, Integer.MIN_VALUE, 0}
+        };
+        SpatialIndex index = new SpatialIndex();
+        index.put(new DustBlock(0, 0, 0, 0));
+        PositionSet set = new PositionSet();
+        set.add(0, 0, 0);
+        for (int[] p : outside) {
+            assertFalse(SpatialIndex.inRange(p[0], p[1], p[2]));
+            assertThrows(IllegalArgumentException.class, () -> index.put(new DustBlock(p[0], p[1], p[2], 0)));
+            assertThrows(IllegalArgumentException.class, () -> set.add(p[0], p[1], p[2]));
+            assertEquals(-1, index.indexOf(p[0], p[1], p[2]));
+            assertFalse(set.contains(p[0], p[1], p[2]));
+        }
+        assertEquals(1, index.size());
+        assertTrue(set.contains(0, 0, 0));
+        // 4096 in Y, 2^26 in X and Z pack onto the origin's key
+        assertEquals(SpatialIndex.pack(0, 0, 0), SpatialIndex.pack(1 << 26, 4096, 1 << 26));
+        assertEquals(-1, index.indexOf(1 << 26, 4096, 1 << 26));
+    }
+}
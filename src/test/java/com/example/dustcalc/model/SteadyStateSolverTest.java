@@ -0,0 +1,103 @@
+package com.example.dustcalc.model;
+
+import com.example.dustcalc.input.BlockingBlockSpec;
+import com.example.dustcalc.input.DustBlockSpec;
+import com.example.dustcalc.input.Instance;
+import com.example.dustcalc.input.PowerSourceSpec;
+import com.example.dustcalc.input.TransparentBlockSpec;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks SteadyStateSolver against CompiledTracer on random circuits: starting
+ * from every dust and source at 0, switching the sources on one by one must
+ * leave every dust at the level the solver computes.
+ */
+class SteadyStateSolverTest {
+
+    @Test
+    void matchesTracerFromZeroedState() {
+        for (long seed = 0; seed < 200; seed++) {
+            Random random = new Random(seed);
+            CompiledCircuit circuit = randomCircuit(random);
+            int n = circuit.nodeCount();
+            byte[] zeroed = new byte[n + circuit.sourceCount()];
+            byte[] levels = zeroed.clone();
+            for (int s = 0; s < circuit.sourceCount(); s++) {
+                levels[n + s] = (byte) random.nextInt(16);
+            }
+
+            CompiledTracer tracer = new CompiledTracer(circuit);
+            tracer.reset(zeroed);
+            for (int s = 0; s < circuit.sourceCount(); s++) {
+                tracer.toggle(s, levels[n + s], new CountingTraceSink());
+            }
+            byte[] traced = new byte[n];
+            for (int id = 0; id < n; id++) {
+                traced[id] = (byte) tracer.getPower(id);
+            }
+
+            byte[] solved = levels.clone();
+            new SteadyStateSolver(circuit).solve(solved);
+            byte[] solvedDust = new byte[n];
+            System.arraycopy(solved, 0, solvedDust, 0, n);
+            assertArrayEquals(traced, solvedDust, "seed " + seed);
+        }
+    }
+
+    @Test
+    void rejectsSourceLevelsOutOfRange() {
+        CompiledCircuit circuit = randomCircuit(new Random(1));
+        int n = circuit.nodeCount();
+        for (byte bad : new byte[]{-1, 16}) {
+            byte[] powers = new byte[n + circuit.sourceCount()];
+            powers[n] = bad;
+            byte[] before = powers.clone();
+            assertThrows(IllegalArgumentException.class, () -> new SteadyStateSolver(circuit).solve(powers));
+            assertArrayEquals(before, powers, "levels changed by a rejected solve");
+        }
+    }
+
+    /** A dense little circuit with dust, obstacles and 1-3 sources, ordered and compiled. */
+    private static CompiledCircuit randomCircuit(Random random) {
+        Set<String> used = new HashSet<>();
+        List<PowerSourceSpec> sources = new ArrayList<>();
+        List<DustBlockSpec> dust = new ArrayList<>();
+        List<TransparentBlockSpec> transparent = new ArrayList<>();
+        List<BlockingBlockSpec> blocking = new ArrayList<>();
+        int sourceCount = 1 + random.nextInt(3);
+        for (int i = 0; i < 90; i++) {
+            int x = random.nextInt(8);
+            int y = random.nextInt(4);
+            int z = random.nextInt(8);
+            if (!used.add(x + "," + y + "," + z)) continue;
+            if (sources.size() < sourceCount) {
+                boolean[] mask = new boolean[6];
+                for (int dir = 0; dir < mask.length; dir++) {
+                    mask[dir] = random.nextInt(3) > 0;
+                }
+                sources.add(new PowerSourceSpec(x, y, z, 15, mask));
+                continue;
+            }
+            switch (random.nextInt(5)) {
+                case 0 -> blocking.add(new BlockingBlockSpec(x, y, z, "stone"));
+                case 1 -> transparent.add(new TransparentBlockSpec(x, y, z, "glass"));
+                // Initial dust powers are replaced by the zeroed state
+                default -> dust.add(new DustBlockSpec(x, y, z, random.nextInt(16)));
+            }
+        }
+        Instance instance = new Instance(null, sources, dust, transparent, blocking);
+        SpatialIndex index = new SpatialIndex(dust.size());
+        List<DustBlock> graph = new CircuitGraphBuilder().build(instance, index);
+        new UpdateOrderCalculator().applyOrdering(graph, index);
+        return CompiledCircuit.compile(index, sources);
+    }
+}